@@ -0,0 +1,149 @@
+package io.cogswell.sdk;
+
+import android.util.Log;
+
+import com.koushikdutta.async.http.WebSocket;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+public class FrameCompressionTest extends TestCase {
+    private static final int MESSAGES = 5000;
+
+    private static final String[] EVENTS = {"level-complete", "purchase", "login", "achievement-unlocked"};
+    private static final String[] CAMPAIGNS = {"Spring Sale", "Weekend Double XP", "Welcome Back"};
+
+    /**
+     * A trace shaped like the push traffic of one subscription: every message repeats the
+     * namespace, campaign and forwarded event structure, with fresh ids and values.
+     */
+    private static List<String> trace() {
+        Random random = new Random(7);
+        List<String> trace = new ArrayList<>(MESSAGES);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            String event = EVENTS[random.nextInt(EVENTS.length)];
+
+            trace.add("{" +
+                    "\"namespace\":\"game-events\"," +
+                    "\"ciid_hash\":\"" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + "\"," +
+                    "\"campaign_name\":\"" + CAMPAIGNS[random.nextInt(CAMPAIGNS.length)] + "\"," +
+                    "\"campaign_id\":" + (1000 + random.nextInt(20)) + "," +
+                    "\"event_name\":\"" + event + "\"," +
+                    "\"message_id\":\"" + new UUID(random.nextLong(), random.nextLong()) + "\"," +
+                    "\"notification_message\":\"You unlocked a reward!\"," +
+                    "\"forwarded_event\":{" +
+                        "\"namespace\":\"game-events\"," +
+                        "\"event_name\":\"" + event + "\"," +
+                        "\"timestamp\":\"2016-05-03T17:" + (10 + i / 600 % 50) + ":" + (10 + i % 50) + "." + (100 + random.nextInt(900)) + "-06:00\"," +
+                        "\"attributes\":{\"level\":" + random.nextInt(50) + ",\"score\":" + random.nextInt(10000) / 100.0 +
+                            ",\"hard_mode\":" + random.nextBoolean() + ",\"items\":[\"sword\",\"shield\"],\"guild\":null}" +
+                    "}}");
+        }
+
+        return trace;
+    }
+
+    private static void benchmark(String name, FrameCompression.Builder builder, List<String> trace) throws Exception {
+        FrameCompression server = builder.build();
+        FrameCompression client = builder.build();
+        FrameCompression.Session sending = server.newSession();
+        FrameCompression.Session receiving = client.newSession();
+
+        long plain = 0;
+        long compressed = 0;
+
+        for (String message : trace) {
+            byte[] frame = sending.deflate(message);
+
+            plain += message.getBytes(Methods.UTF_8).length;
+            compressed += frame.length;
+
+            assertEquals(message, receiving.inflate(frame));
+        }
+
+        sending.end();
+        receiving.end();
+
+        assertEquals(plain - compressed, client.getBytesSavedIn());
+
+        Log.i("Cogs-SDK", String.format("%s: %d messages, %d bytes -> %d bytes (%.1f%%), deflate %.1fus, inflate %.1fus per message",
+                name, trace.size(), plain, compressed, 100.0 * compressed / plain,
+                server.getAverageDeflateMicros(), client.getAverageInflateMicros()));
+    }
+
+    public void testTraceRoundTrips() throws Exception {
+        List<String> trace = trace();
+
+        benchmark("Context takeover", FrameCompression.builder(), trace);
+        benchmark("No context takeover", FrameCompression.builder().withContextTakeover(false), trace);
+        benchmark("Context takeover, level 1", FrameCompression.builder().withLevel(1), trace);
+    }
+
+    public void testContextTakeoverCompressesBetter() throws Exception {
+        List<String> trace = trace().subList(0, 500);
+
+        FrameCompression takeover = FrameCompression.builder().build();
+        FrameCompression noTakeover = FrameCompression.builder().withContextTakeover(false).build();
+        FrameCompression.Session a = takeover.newSession();
+        FrameCompression.Session b = noTakeover.newSession();
+
+        for (String message : trace) {
+            a.deflate(message);
+            b.deflate(message);
+        }
+
+        assertTrue(noTakeover.getBytesSavedOut() > 0);
+        assertTrue(takeover.getBytesSavedOut() > noTakeover.getBytesSavedOut());
+        assertEquals("permessage-deflate; client_no_context_takeover; server_no_context_takeover", noTakeover.getOffer());
+    }
+
+    public void testCompressesSendsOnlyOnceAccepted() throws Exception {
+        final List<Object> sent = new ArrayList<>();
+        WebSocket ws = (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(), new Class<?>[] {WebSocket.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("send")) {
+                    sent.add(args[0]);
+                }
+                return null;
+            }
+        });
+
+        FrameCompression compression = FrameCompression.builder().withThreshold(16).build();
+        FrameCompression.Session server = compression.newSession();
+        FrameCompression.Session session = compression.newSession();
+        String message = trace().get(0);
+
+        session.send(ws, message);
+        assertTrue(sent.get(0) instanceof String);
+
+        session.inflate(server.deflate(message));
+        assertTrue(session.isAccepted());
+
+        session.send(ws, message);
+        session.send(ws, "{\"ack\":1}");
+        assertTrue(sent.get(1) instanceof byte[]);
+        assertTrue(sent.get(2) instanceof String);
+
+        // A written frame is deflated straight from the writer's bytes.
+        JsonBodyWriter writer = new JsonBodyWriter(64, null).beginObject().name("msg").value(message).endObject();
+        session.send(ws, writer);
+        assertEquals(message, server.inflate((byte[]) sent.get(1)));
+        assertEquals(writer.toString(), server.inflate((byte[]) sent.get(3)));
+
+        // A send racing the close falls back to text rather than touching the ended deflater.
+        session.end();
+        session.send(ws, message);
+        session.send(ws, writer);
+        assertEquals(message, sent.get(4));
+        assertEquals(writer.toString(), sent.get(5));
+    }
+}
@@ -0,0 +1,178 @@
+package io.cogswell.sdk;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+public class GambitExecutorTest extends TestCase {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Occupies the only worker until released.
+     */
+    private final Runnable gate = new Runnable() {
+        @Override
+        public void run() {
+            started.countDown();
+
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+
+    /**
+     * Build a single-worker executor with room for one queued task, and fill both.
+     */
+    private GambitExecutor saturated(GambitExecutor.OverflowPolicy policy) throws Exception {
+        GambitExecutor executor = GambitExecutor.builder()
+                .withBounds(1, 1)
+                .withOverflowPolicy(policy)
+                .build();
+
+        executor.execute(gate);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        return executor;
+    }
+
+    private void drain(GambitExecutor executor) throws Exception {
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    public void testBlock() throws Exception {
+        final GambitExecutor executor = saturated(GambitExecutor.OverflowPolicy.BLOCK);
+        executor.execute(task("queued"));
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                executor.execute(task("overflow"));
+            }
+        };
+        producer.start();
+
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(1, executor.getQueueDepth());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        drain(executor);
+        assertEquals("[queued, overflow]", ran.toString());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(0, executor.getDroppedCount());
+    }
+
+    public void testCallerRuns() throws Exception {
+        GambitExecutor executor = saturated(GambitExecutor.OverflowPolicy.CALLER_RUNS);
+        executor.execute(task("queued"));
+
+        final Thread[] runner = new Thread[1];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runner[0] = Thread.currentThread();
+            }
+        });
+
+        assertSame(Thread.currentThread(), runner[0]);
+        assertEquals(1, executor.getQueueDepth());
+
+        drain(executor);
+        assertEquals("[queued]", ran.toString());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(0, executor.getDroppedCount());
+    }
+
+    public void testDropOldestCancelsDroppedTask() throws Exception {
+        GambitExecutor executor = saturated(GambitExecutor.OverflowPolicy.DROP_OLDEST);
+        Future<?> first = executor.submit(task("first"));
+        Future<?> second = executor.submit(task("second"));
+        Future<?> third = executor.submit(task("third"));
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertFalse(third.isDone());
+        assertEquals(1, executor.getQueueDepth());
+
+        drain(executor);
+        assertTrue(third.isDone());
+        assertFalse(third.isCancelled());
+        assertEquals("[third]", ran.toString());
+        assertEquals(2, executor.getRejectedCount());
+        assertEquals(2, executor.getDroppedCount());
+    }
+
+    public void testFailFast() throws Exception {
+        GambitExecutor executor = saturated(GambitExecutor.OverflowPolicy.FAIL_FAST);
+        executor.execute(task("queued"));
+
+        try {
+            executor.execute(task("overflow"));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        drain(executor);
+        assertEquals("[queued]", ran.toString());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(0, executor.getDroppedCount());
+    }
+
+    public void testUnboundedNeverRejects() throws Exception {
+        GambitExecutor executor = GambitExecutor.builder()
+                .withOverflowPolicy(GambitExecutor.OverflowPolicy.FAIL_FAST)
+                .build();
+        assertFalse(executor.isBounded());
+
+        for (int i = 0; i < 16; i++) {
+            executor.execute(gate);
+        }
+
+        drain(executor);
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    public void testRejectsInvalidBounds() {
+        try {
+            GambitExecutor.builder().withBounds(0, 1).build();
+            fail();
+        } catch (CogsBuilderException e) {
+            // expected
+        }
+
+        try {
+            GambitExecutor.builder().withBounds(1, 0).build();
+            fail();
+        } catch (CogsBuilderException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.cogswell.sdk;
+
+import com.koushikdutta.async.http.WebSocket;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HeartbeatMonitorTest extends TestCase {
+    /**
+     * Stands in for a WebSocket, answering pings only if it is alive.
+     */
+    private static class FakeSocket implements InvocationHandler {
+        final boolean alive;
+        volatile WebSocket.PongCallback pongCallback;
+        volatile boolean closed = false;
+        volatile int pings = 0;
+
+        FakeSocket(boolean alive) {
+            this.alive = alive;
+        }
+
+        WebSocket create() {
+            return (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(), new Class<?>[] {WebSocket.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+
+            if (name.equals("setPongCallback")) {
+                pongCallback = (WebSocket.PongCallback) args[0];
+            } else if (name.equals("ping")) {
+                pings++;
+                if (alive) {
+                    pongCallback.onPongReceived((String) args[0]);
+                }
+            } else if (name.equals("close")) {
+                closed = true;
+            }
+
+            return null;
+        }
+    }
+
+    public void testClosesUnresponsiveSocket() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        HeartbeatMonitor monitor = HeartbeatMonitor.builder()
+                .withPingInterval(100, TimeUnit.MILLISECONDS)
+                .withPongTimeout(200, TimeUnit.MILLISECONDS)
+                .build(scheduler);
+
+        FakeSocket alive = new FakeSocket(true);
+        FakeSocket dead = new FakeSocket(false);
+
+        HeartbeatMonitor.Heartbeat aliveHeartbeat = monitor.watch(alive.create());
+        monitor.watch(dead.create());
+        assertEquals(2, monitor.size());
+
+        Thread.sleep(1000);
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertFalse(alive.closed);
+        assertTrue(alive.pings >= 3);
+        assertTrue(aliveHeartbeat.getLastRttMicros() >= 0);
+
+        assertTrue(dead.closed);
+        assertEquals(1, dead.pings);
+
+        assertEquals(1, monitor.getTimeoutCount());
+        assertEquals(alive.pings, monitor.getPongCount());
+        assertEquals(1, monitor.size());
+
+        aliveHeartbeat.cancel();
+        assertEquals(0, monitor.size());
+    }
+}
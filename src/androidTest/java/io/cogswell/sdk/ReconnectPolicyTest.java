@@ -0,0 +1,170 @@
+package io.cogswell.sdk;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ReconnectPolicyTest extends TestCase {
+    private static final int CLIENTS = 10000;
+    private static final long OUTAGE_MILLIS = 10000;
+    private static final int ACCEPTS_PER_SECOND = 500;
+    private static final int SECONDS = 300;
+    private static final int BIN_SECONDS = 5;
+
+    public void testCeiling() {
+        ReconnectPolicy policy = ReconnectPolicy.builder()
+                .withStrategy(ReconnectPolicy.exponential(1, TimeUnit.SECONDS))
+                .withCeiling(5, TimeUnit.SECONDS)
+                .withSeed(1)
+                .build(new ConnectivityMonitor());
+
+        for (int i = 0; i < 50; i++) {
+            long delay = policy.nextDelay();
+            assertTrue(delay >= 0 && delay <= 5000);
+        }
+        assertEquals(50, policy.getAttempt());
+    }
+
+    public void testResetAfterStableUptime() {
+        ReconnectPolicy policy = ReconnectPolicy.builder()
+                .withStableUptime(0, TimeUnit.MILLISECONDS)
+                .build(new ConnectivityMonitor());
+
+        policy.nextDelay();
+        policy.nextDelay();
+        policy.disconnected();
+        assertEquals(2, policy.getAttempt());
+
+        policy.connected();
+        policy.disconnected();
+        assertEquals(0, policy.getAttempt());
+    }
+
+    public void testNoAttemptWhileOffline() {
+        ConnectivityMonitor connectivity = new ConnectivityMonitor();
+        ReconnectPolicy policy = ReconnectPolicy.builder().build(connectivity);
+        final int[] runs = new int[1];
+
+        connectivity.setConnected(false);
+        policy.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+        policy.cancel();
+        connectivity.setConnected(true);
+
+        assertEquals(0, policy.getAttempt());
+        assertEquals(0, runs[0]);
+    }
+
+    /**
+     * Every client loses its connection at once. The stand-in server is down for the outage and
+     * then accepts a fixed number of connections per second, failing the rest.
+     */
+    public void testReconnectSpread() {
+        int[] fixed = simulate("fixed 5s", ReconnectPolicy.fixed(5, TimeUnit.SECONDS));
+        int[] exponential = simulate("exponential", ReconnectPolicy.exponential(1, TimeUnit.SECONDS));
+        int[] jitter = simulate("decorrelated jitter", ReconnectPolicy.decorrelatedJitter(1, TimeUnit.SECONDS));
+
+        assertEquals(CLIENTS, fixed[0]);
+        assertEquals(CLIENTS, exponential[0]);
+        assertEquals(CLIENTS, jitter[0]);
+
+        assertTrue(exponential[1] < fixed[1] / 2);
+        assertTrue(jitter[1] < fixed[1] / 2);
+    }
+
+    /**
+     * @return the number of clients connected, and the peak attempts in any one second once the
+     *         server is back up
+     */
+    private int[] simulate(String name, ReconnectPolicy.Strategy strategy) {
+        ReconnectPolicy[] policies = new ReconnectPolicy[CLIENTS];
+        PriorityQueue<long[]> attempts = new PriorityQueue<>(CLIENTS, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : Long.compare(a[1], b[1]);
+            }
+        });
+
+        ConnectivityMonitor connectivity = new ConnectivityMonitor();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            policies[i] = ReconnectPolicy.builder()
+                    .withStrategy(strategy)
+                    .withSeed(i)
+                    .build(connectivity);
+
+            attempts.add(new long[] {policies[i].nextDelay(), i});
+        }
+
+        int[] perSecond = new int[SECONDS];
+        int acceptedThisSecond = 0;
+        long currentSecond = -1;
+        int connected = 0;
+
+        while (!attempts.isEmpty()) {
+            long[] attempt = attempts.poll();
+            long now = attempt[0];
+            long second = now / 1000;
+
+            if (second >= SECONDS) {
+                break;
+            }
+            if (second != currentSecond) {
+                currentSecond = second;
+                acceptedThisSecond = 0;
+            }
+
+            perSecond[(int) second]++;
+
+            if (now >= OUTAGE_MILLIS && acceptedThisSecond < ACCEPTS_PER_SECOND) {
+                acceptedThisSecond++;
+                connected++;
+            } else {
+                ReconnectPolicy policy = policies[(int) attempt[1]];
+                attempts.add(new long[] {now + policy.nextDelay(), attempt[1]});
+            }
+        }
+
+        int peak = 0;
+        int last = 0;
+        for (int i = 0; i < SECONDS; i++) {
+            if (i >= OUTAGE_MILLIS / 1000) {
+                peak = Math.max(peak, perSecond[i]);
+            }
+            if (perSecond[i] > 0) {
+                last = i;
+            }
+        }
+
+        StringBuilder plot = new StringBuilder();
+        plot.append(name).append(": ").append(connected).append(" connected, peak ")
+                .append(peak).append(" attempts/s, last attempt at ").append(last).append(" s\n");
+
+        // One row per bin, on the same scale for every strategy: a full row is one attempt
+        // per client.
+        for (int bin = 0; bin <= last; bin += BIN_SECONDS) {
+            int count = 0;
+            for (int i = bin; i < bin + BIN_SECONDS && i < SECONDS; i++) {
+                count += perSecond[i];
+            }
+
+            plot.append(String.format("%4d s %6d |", bin, count));
+            for (int j = 0; j < Math.min(count, CLIENTS) * 60 / CLIENTS; j++) {
+                plot.append('#');
+            }
+            plot.append(count > CLIENTS ? "+\n" : "\n");
+        }
+
+        Log.i("Cogs-SDK", plot.toString());
+
+        return new int[] {connected, peak};
+    }
+}
@@ -0,0 +1,110 @@
+package io.cogswell.sdk.json;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+public class JsonTest extends TestCase {
+    private static final String FRAME = "{" +
+            "\"namespace\":\"game-events\"," +
+            "\"ciid_hash\":\"3d0d3b8a7c1f4e6a9b2c5d8e1f4a7b0c\"," +
+            "\"campaign_name\":\"Spring \\\"Sale\\\" \\u00e9\"," +
+            "\"campaign_id\":1234567," +
+            "\"event_name\":\"level-complete\"," +
+            "\"message_id\":\"8c6f2a4e-1b3d-4f5a-9e7c-2d4b6f8a0c1e\"," +
+            "\"notification_message\":\"You unlocked a reward!\"," +
+            "\"ignored\":{\"nested\":[1,2,{\"deep\":\"]}\"}],\"flag\":true}," +
+            "\"forwarded_event\":{" +
+                "\"namespace\":\"game-events\"," +
+                "\"event_name\":\"level-complete\"," +
+                "\"timestamp\":\"2016-05-03T17:02:11.123-06:00\"," +
+                "\"attributes\":{\"level\":12,\"score\":98.5,\"hard_mode\":false,\"items\":[\"sword\",\"shield\"],\"guild\":null}" +
+            "}}";
+
+    public void testMatchesTreeImplementation() throws Exception {
+        JsonNode indexed = Json.parse(FRAME);
+        JsonNode tree = new JsonObject(new JSONObject(FRAME));
+
+        for (String key : new String[] {"namespace", "ciid_hash", "campaign_name", "event_name", "message_id", "notification_message", "missing"}) {
+            assertEquals(key, tree.str(key), indexed.str(key));
+        }
+
+        assertEquals(1234567.0, indexed.num("campaign_id"));
+        assertEquals(tree.num("campaign_id"), indexed.num("campaign_id"));
+
+        JsonNode attributes = indexed.obj("forwarded_event").obj("attributes");
+        JsonNode treeAttributes = tree.obj("forwarded_event").obj("attributes");
+
+        assertTrue(attributes instanceof JsonObject);
+        assertSame(attributes, indexed.obj("forwarded_event").obj("attributes"));
+        assertEquals(treeAttributes.num("score").doubleValue(), attributes.num("score").doubleValue());
+        assertEquals(treeAttributes.bool("hard_mode"), attributes.bool("hard_mode"));
+        assertEquals(treeAttributes.arr("items").str(1), attributes.arr("items").str(1));
+        assertEquals(treeAttributes.isNull("guild"), attributes.isNull("guild"));
+        assertTrue(attributes.arr("items").isNull(2));
+        assertTrue(attributes.obj("level").isNull());
+        assertEquals("]}", indexed.obj("ignored").arr("nested").obj(2).str("deep"));
+    }
+
+    public void testRejectsMalformed() {
+        assertTrue(Json.parse("").isNull());
+        assertTrue(Json.parse("[1,2]").isNull());
+        assertTrue(Json.parse("{\"a\":1").isNull());
+        assertTrue(Json.parse("{\"a\" 1}").isNull());
+        assertTrue(Json.parse("{\"a\":\"unterminated}").isNull());
+        assertFalse(Json.parse("{}").isNull());
+    }
+
+    /**
+     * Compares the indexed parser against the org.json backed wrapper it replaced, reading the
+     * fields a CogsMessage reads.
+     */
+    public void testThroughputAgainstTreeImplementation() throws Exception {
+        int iterations = 200000;
+        long sink = 0;
+
+        // Warm up both paths.
+        for (int i = 0; i < iterations / 10; i++) {
+            sink += readMessage(Json.parse(FRAME));
+            sink += readMessage(new JsonObject(new JSONObject(FRAME)));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += readMessage(new JsonObject(new JSONObject(FRAME)));
+        }
+        long treeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += readMessage(Json.parse(FRAME));
+        }
+        long indexedNanos = System.nanoTime() - start;
+
+        assertTrue(sink != 0);
+
+        Log.i("Cogs-SDK", "Message frame parse: org.json tree " + (treeNanos / iterations) + " ns, " +
+                "indexed " + (indexedNanos / iterations) + " ns");
+    }
+
+    private static long readMessage(JsonNode json) {
+        long hash = 0;
+
+        hash += json.str("namespace").length();
+        hash += json.str("ciid_hash").length();
+        hash += json.str("campaign_name").length();
+        hash += json.num("campaign_id").longValue();
+        hash += json.str("event_name").length();
+        hash += json.str("message_id").length();
+        hash += json.str("notification_message").length();
+
+        JsonNode event = json.obj("forwarded_event");
+        hash += event.str("namespace").length();
+        hash += event.str("event_name").length();
+        hash += event.str("timestamp").length();
+
+        return hash;
+    }
+}
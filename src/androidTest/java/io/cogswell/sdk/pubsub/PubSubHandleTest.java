@@ -5,13 +5,143 @@ import android.util.Log;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.koushikdutta.async.callback.CompletedCallback;
+import com.koushikdutta.async.http.WebSocket;
 
 import junit.framework.TestCase;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cogswell.sdk.exceptions.CogsPubSubException;
 
 public class PubSubHandleTest extends TestCase {
+    /**
+     * Stands in for the Pub/Sub service, answering each publish on its own I/O thread after
+     * the round trip time of the simulated link. Publishes to the channel "forbidden" are
+     * rejected. A batch of publishes is answered with an array of responses. Publishes which
+     * ask for no ack are only recorded. Subscribe and unsubscribe requests always succeed.
+     */
+    static class PubSubStandIn implements InvocationHandler {
+        final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+        final long rttMillis;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicInteger mixedChannelFrames = new AtomicInteger();
+        final List<JSONObject> unacked = Collections.synchronizedList(new ArrayList<JSONObject>());
+        volatile WebSocket.StringCallback stringCallback;
+        volatile CompletedCallback closedCallback;
+        volatile boolean respond = true;
+
+        PubSubStandIn() {
+            this(0);
+        }
+
+        PubSubStandIn(long rttMillis) {
+            this.rttMillis = rttMillis;
+        }
+
+        WebSocket create() {
+            return (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(), new Class<?>[] {WebSocket.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            String name = method.getName();
+
+            if (name.equals("setStringCallback")) {
+                stringCallback = (WebSocket.StringCallback) args[0];
+            } else if (name.equals("setClosedCallback")) {
+                closedCallback = (CompletedCallback) args[0];
+            } else if (name.equals("send") && args[0] instanceof String) {
+                String frame = (String) args[0];
+                final boolean batch = frame.startsWith("[");
+                final JSONArray requests = batch ? new JSONArray(frame) : new JSONArray().put(new JSONObject(frame));
+
+                frames.incrementAndGet();
+                if (requests.getJSONObject(0).has("ack") && !requests.getJSONObject(0).optBoolean("ack")) {
+                    unacked.add(requests.getJSONObject(0));
+                    return null;
+                }
+
+                for (int i = 1; i < requests.length(); i++) {
+                    if (!requests.getJSONObject(i).getString("chan").equals(requests.getJSONObject(0).getString("chan"))) {
+                        mixedChannelFrames.incrementAndGet();
+                        break;
+                    }
+                }
+
+                if (respond) {
+                    int current = inFlight.addAndGet(requests.length());
+                    int max;
+                    while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current));
+
+                    io.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            StringBuilder responses = new StringBuilder();
+
+                            for (int i = 0; i < requests.length(); i++) {
+                                JSONObject request = requests.optJSONObject(i);
+                                long seq = request.optLong("seq");
+
+                                if (!request.optString("action").equals("pub")) {
+                                    responses.append(i == 0 ? "" : ",").append(
+                                            "{\"seq\":" + seq + ",\"action\":\"" + request.optString("action") + "\",\"code\":200,\"channels\":[]}");
+                                    continue;
+                                }
+
+                                responses.append(i == 0 ? "" : ",").append(request.optString("chan").equals("forbidden") ?
+                                        "{\"seq\":" + seq + ",\"action\":\"pub\",\"code\":401,\"message\":\"Not Authorized\",\"details\":\"No write key\"}" :
+                                        "{\"seq\":" + seq + ",\"action\":\"pub\",\"code\":200,\"id\":\"msg-" + seq + "\"}");
+                            }
+
+                            inFlight.addAndGet(-requests.length());
+                            stringCallback.onStringAvailable(batch ? "[" + responses + "]" : responses.toString());
+                        }
+                    }, rttMillis, TimeUnit.MILLISECONDS);
+                }
+            } else if (name.equals("close")) {
+                io.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        closedCallback.onCompleted(null);
+                    }
+                });
+            }
+
+            return null;
+        }
+    }
+
+    static PubSubHandle standInHandle(PubSubStandIn standIn) {
+        return standInHandle(standIn, new PubSubOptions("https://localhost/pubsub", false));
+    }
+
+    static PubSubHandle standInHandle(PubSubStandIn standIn, PubSubOptions options) {
+        PubSubHandle handle = new PubSubHandle(new String[0], options);
+        handle.opened(standIn.create());
+        return handle;
+    }
+
     Object result = null;
 
     String[] keys = {
@@ -78,6 +208,439 @@ public class PubSubHandleTest extends TestCase {
 
     }
 
+    public void testReadyWhenSetupCompletes() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        final PubSubHandle handle = new PubSubHandle(new String[0], new PubSubOptions("https://localhost/pubsub", false));
+        final List<ListenableFuture<String>> published = new ArrayList<>();
+
+        handle.setupFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                published.add(handle.publish("chan", "first"));
+            }
+        }, MoreExecutors.directExecutor());
+
+        handle.opened(standIn.create());
+
+        assertEquals(1, published.size());
+        assertEquals("msg-1", published.get(0).get(5, TimeUnit.SECONDS));
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    public void testPublishCompletesBySequence() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        PubSubHandle handle = standInHandle(standIn);
+
+        ListenableFuture<String> first = handle.publish("chan", "one");
+        ListenableFuture<String> rejected = handle.publish("forbidden", "two");
+        ListenableFuture<String> third = handle.publish("chan", "three \"quoted\"");
+
+        assertEquals("msg-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("msg-3", third.get(5, TimeUnit.SECONDS));
+
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("Rejected publish should fail.");
+        } catch (ExecutionException e) {
+            CogsPubSubException error = (CogsPubSubException) e.getCause();
+            assertEquals(401, error.getCode());
+            assertEquals("No write key", error.getDetails());
+        }
+
+        assertEquals(0, handle.getPendingCount());
+
+        standIn.respond = false;
+        ListenableFuture<String> unanswered = handle.publish("chan", "lost");
+        assertEquals(1, handle.getPendingCount());
+
+        handle.close();
+
+        try {
+            unanswered.get(5, TimeUnit.SECONDS);
+            fail("Publish should fail when the connection closes.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CogsPubSubException);
+        }
+
+        assertEquals(0, handle.getPendingCount());
+        assertTrue(handle.publish("chan", "closed").isDone());
+        standIn.io.shutdown();
+    }
+
+    public void testPublishThroughput() throws Exception {
+        final int publishers = 4;
+        final int perPublisher = 50000;
+
+        PubSubStandIn standIn = new PubSubStandIn();
+        final PubSubHandle handle = standInHandle(standIn);
+        final List<ListenableFuture<String>> responses = new ArrayList<>(publishers * perPublisher);
+
+        long start = System.nanoTime();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < publishers; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<ListenableFuture<String>> mine = new ArrayList<>(perPublisher);
+
+                    for (int i = 0; i < perPublisher; i++) {
+                        mine.add(handle.publish("chan", "message " + i));
+                    }
+
+                    synchronized (responses) {
+                        responses.addAll(mine);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> ids = Futures.allAsList(responses).get(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(publishers * perPublisher, ids.size());
+        assertEquals(publishers * perPublisher, new HashSet<>(ids).size());
+        assertEquals(0, handle.getPendingCount());
+
+        Log.i("Cogs-SDK", String.format("Published and acknowledged %d messages from %d threads in %d ms (%.0f per second)",
+                ids.size(), publishers, TimeUnit.NANOSECONDS.toMillis(elapsed), ids.size() * 1e9 / elapsed));
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    private static double windowedRate(int window, PubSubOptions.WindowFullPolicy policy) throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn(100);
+        PubSubHandle handle = standInHandle(standIn,
+                new PubSubOptions("https://localhost/pubsub", false).withPublishWindow(window, policy));
+
+        // About one second's worth of round trips at each window size.
+        int count = window * 10;
+        List<ListenableFuture<String>> responses = new ArrayList<>(count);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            responses.add(handle.publish("chan", "message " + i));
+        }
+        Futures.allAsList(responses).get(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(window, standIn.maxInFlight.get());
+        assertEquals(0, handle.getPendingCount());
+        assertEquals(0, handle.getQueuedCount());
+
+        handle.close();
+        standIn.io.shutdown();
+
+        return count * 1e9 / elapsed;
+    }
+
+    public void testPublishWindow() throws Exception {
+        double[] rates = new double[3];
+        int[] windows = {1, 16, 256};
+
+        for (int i = 0; i < windows.length; i++) {
+            rates[i] = windowedRate(windows[i], PubSubOptions.WindowFullPolicy.BLOCK);
+            Log.i("Cogs-SDK", String.format("Window %d over a 100 ms link: %.0f publishes per second", windows[i], rates[i]));
+        }
+
+        assertTrue(rates[0] < 11);
+        assertTrue(rates[1] > 8 * rates[0]);
+        assertTrue(rates[2] > 8 * rates[1]);
+
+        double queued = windowedRate(16, PubSubOptions.WindowFullPolicy.QUEUE);
+        Log.i("Cogs-SDK", String.format("Window 16, queueing, over a 100 ms link: %.0f publishes per second", queued));
+        assertTrue(queued > 8 * rates[0]);
+    }
+
+    public void testQueuedPublishesFailOnClose() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn(100);
+        PubSubHandle handle = standInHandle(standIn,
+                new PubSubOptions("https://localhost/pubsub", false).withPublishWindow(2, PubSubOptions.WindowFullPolicy.QUEUE));
+
+        List<ListenableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(handle.publish("chan", "message " + i));
+        }
+
+        assertEquals(2, handle.getPendingCount());
+        assertEquals(3, handle.getQueuedCount());
+
+        handle.close();
+
+        for (ListenableFuture<String> response : responses) {
+            try {
+                response.get(5, TimeUnit.SECONDS);
+                fail("Publish should fail when the connection closes.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CogsPubSubException);
+            }
+        }
+
+        assertEquals(0, handle.getQueuedCount());
+        standIn.io.shutdown();
+    }
+
+    public void testPublishBatching() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn(10);
+        PubSubHandle handle = standInHandle(standIn, new PubSubOptions("https://localhost/pubsub", false)
+                .withPublishBatching(PublishBatcher.builder()
+                        .withMaxBatchBytes(4096)
+                        .withLinger(20, TimeUnit.MILLISECONDS)));
+
+        String[] channels = {"cpu", "memory", "battery", "forbidden"};
+        List<ListenableFuture<String>> responses = new ArrayList<>();
+
+        // Telemetry: a sample on each channel every millisecond, for a quarter of a second.
+        for (int tick = 0; tick < 250; tick++) {
+            for (String channel : channels) {
+                responses.add(handle.publish(channel, "{\"t\":" + tick + ",\"v\":" + tick % 17 + "}"));
+            }
+            Thread.sleep(1);
+        }
+
+        int acknowledged = 0;
+        int rejected = 0;
+        HashSet<String> ids = new HashSet<>();
+
+        for (ListenableFuture<String> response : responses) {
+            try {
+                ids.add(response.get(5, TimeUnit.SECONDS));
+                acknowledged++;
+            } catch (ExecutionException e) {
+                assertEquals(401, ((CogsPubSubException) e.getCause()).getCode());
+                rejected++;
+            }
+        }
+
+        Log.i("Cogs-SDK", "Batched " + responses.size() + " publishes into " + standIn.frames.get() + " frames.");
+
+        assertEquals(750, acknowledged);
+        assertEquals(750, ids.size());
+        assertEquals(250, rejected);
+        assertEquals(0, standIn.mixedChannelFrames.get());
+        assertTrue(standIn.frames.get() < responses.size() / 10);
+        assertEquals(0, handle.getPendingCount());
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    public void testBatchesRespectMaxBytes() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        PubSubHandle handle = standInHandle(standIn, new PubSubOptions("https://localhost/pubsub", false)
+                .withPublishBatching(PublishBatcher.builder()
+                        .withMaxBatchBytes(1000)
+                        .withLinger(1, TimeUnit.SECONDS)));
+
+        List<ListenableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // With the envelope, four of these fill a frame.
+            responses.add(handle.publish("chan", String.format("%180d", i)));
+        }
+
+        // Two full frames went out as soon as the third batch began; the rest lingers.
+        assertEquals(2, standIn.frames.get());
+        Futures.allAsList(responses.subList(0, 8)).get(5, TimeUnit.SECONDS);
+        assertFalse(responses.get(9).isDone());
+
+        Futures.allAsList(responses).get(5, TimeUnit.SECONDS);
+        assertEquals(3, standIn.frames.get());
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    public void testPublishWithoutAck() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        PubSubHandle handle = standInHandle(standIn);
+
+        String awkward = "quote \" backslash \\ newline \n tab \t control \u0001 separator \u2028 accent \u00e9";
+
+        assertTrue(handle.publishWithoutAck("sensors", awkward));
+        for (int i = 0; i < 999; i++) {
+            assertTrue(handle.publishWithoutAck("sensors", "{\"temp\":" + i + "}"));
+        }
+
+        assertEquals(1000, handle.getUnackedSentCount());
+        assertEquals(0, handle.getUnackedDroppedCount());
+        assertEquals(0, handle.getPendingCount());
+
+        assertEquals(1000, standIn.unacked.size());
+        JSONObject first = standIn.unacked.get(0);
+        assertEquals("sensors", first.getString("chan"));
+        assertEquals(awkward, first.getString("msg"));
+        assertEquals("pub", first.getString("action"));
+
+        // Acked publishes on the same handle are unaffected.
+        assertNotNull(handle.publish("chan", "acked").get(5, TimeUnit.SECONDS));
+
+        handle.close();
+        assertFalse(handle.publishWithoutAck("sensors", "late"));
+        assertEquals(1, handle.getUnackedDroppedCount());
+        standIn.io.shutdown();
+    }
+
+    private static class CountingHandler implements PubSubMessageHandler {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onMessage(PubSubMessage message) {
+            count.incrementAndGet();
+        }
+    }
+
+    private static String messageFrame(String channel, int id) {
+        return "{\"id\":\"" + id + "\",\"action\":\"msg\",\"time\":\"2016-05-03T17:02:11.123Z\",\"chan\":\"" + channel + "\",\"msg\":\"reading " + id + "\"}";
+    }
+
+    public void testSubscriptionRouting() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        PubSubHandle handle = standInHandle(standIn);
+
+        CountingHandler a = new CountingHandler();
+        CountingHandler b = new CountingHandler();
+
+        handle.subscribe("weather", a).get(5, TimeUnit.SECONDS);
+        int frames = standIn.frames.get();
+        handle.subscribe("weather", b).get(5, TimeUnit.SECONDS);
+        assertEquals("A second handler needs no subscribe request", frames, standIn.frames.get());
+
+        standIn.stringCallback.onStringAvailable(messageFrame("weather", 1));
+        standIn.stringCallback.onStringAvailable(messageFrame("traffic", 2));
+        assertEquals(1, a.count.get());
+        assertEquals(1, b.count.get());
+
+        handle.unsubscribe("weather", a).get(5, TimeUnit.SECONDS);
+        assertEquals(frames, standIn.frames.get());
+        standIn.stringCallback.onStringAvailable(messageFrame("weather", 3));
+        assertEquals(1, a.count.get());
+        assertEquals(2, b.count.get());
+
+        handle.unsubscribe("weather", b).get(5, TimeUnit.SECONDS);
+        assertEquals(frames + 1, standIn.frames.get());
+        assertTrue(handle.getSubscriptions().isEmpty());
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    public void testJoinersSharePendingSubscribe() throws Exception {
+        PubSubStandIn standIn = new PubSubStandIn();
+        PubSubHandle handle = standInHandle(standIn);
+        standIn.respond = false;
+
+        ListenableFuture<List<String>> first = handle.subscribe("weather", new CountingHandler());
+        ListenableFuture<List<String>> second = handle.subscribe("weather", new CountingHandler());
+        assertEquals(1, standIn.frames.get());
+        assertFalse("A joiner must wait for the pending subscribe", second.isDone());
+
+        standIn.stringCallback.onStringAvailable(
+                "{\"seq\":1,\"action\":\"subscribe\",\"code\":401,\"message\":\"Not Authorized\",\"details\":\"No read key\"}");
+
+        List<ListenableFuture<List<String>>> waiting = new ArrayList<>();
+        waiting.add(first);
+        waiting.add(second);
+
+        for (ListenableFuture<List<String>> response : waiting) {
+            try {
+                response.get(5, TimeUnit.SECONDS);
+                fail("A refused subscribe should fail every handler waiting on it.");
+            } catch (ExecutionException e) {
+                assertEquals(401, ((CogsPubSubException) e.getCause()).getCode());
+            }
+        }
+        assertTrue("Every handler added while pending is removed", handle.getSubscriptions().isEmpty());
+
+        // Once refused, the next handler sends a subscribe of its own.
+        standIn.respond = true;
+        handle.subscribe("weather", new CountingHandler()).get(5, TimeUnit.SECONDS);
+        assertEquals(2, standIn.frames.get());
+        assertEquals(Collections.singletonList("weather"), handle.getSubscriptions());
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    public void testRoutingUnderChurn() throws Exception {
+        final int channels = 10000;
+        final int messages = 500000;
+
+        PubSubStandIn standIn = new PubSubStandIn();
+        final PubSubHandle handle = standInHandle(standIn);
+
+        CountingHandler[] handlers = new CountingHandler[channels];
+        List<ListenableFuture<List<String>>> subscribed = new ArrayList<>();
+
+        for (int i = 0; i < channels; i++) {
+            handlers[i] = new CountingHandler();
+            subscribed.add(handle.subscribe("channel-" + i, handlers[i]));
+        }
+        Futures.allAsList(subscribed).get(30, TimeUnit.SECONDS);
+        assertEquals(channels, handle.getSubscriptions().size());
+
+        String[] frames = new String[channels];
+        for (int i = 0; i < channels; i++) {
+            frames[i] = messageFrame("channel-" + i, i);
+        }
+
+        long quiet = dispatch(standIn, frames, messages);
+
+        // Churn: add and remove extra handlers on the routed channels, and subscribe and
+        // unsubscribe channels of their own, while messages are dispatched.
+        final AtomicInteger churned = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        Thread churn = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                PubSubMessageHandler extra = new CountingHandler();
+
+                while (!stop.get()) {
+                    String routed = "channel-" + random.nextInt(channels);
+                    String own = "churn-" + random.nextInt(1000);
+
+                    handle.subscribe(routed, extra);
+                    handle.subscribe(own, extra);
+                    handle.unsubscribe(routed, extra);
+                    handle.unsubscribe(own, extra);
+                    churned.addAndGet(4);
+                }
+            }
+        });
+        churn.start();
+
+        long busy = dispatch(standIn, frames, messages);
+
+        stop.set(true);
+        churn.join();
+
+        Log.i("Cogs-SDK", String.format("Routed %d messages over %d channels: %.0f per second quiet, %.0f per second during %d subscription changes",
+                messages, channels, messages * 1e9 / quiet, messages * 1e9 / busy, churned.get()));
+
+        // Every message reached its channel's own handler, churn or not.
+        for (int i = 0; i < channels; i++) {
+            assertEquals(2 * messages / channels, handlers[i].count.get());
+        }
+
+        handle.close();
+        standIn.io.shutdown();
+    }
+
+    private static long dispatch(PubSubStandIn standIn, String[] frames, int messages) {
+        long start = System.nanoTime();
 
+        for (int i = 0; i < messages; i++) {
+            standIn.stringCallback.onStringAvailable(frames[i % frames.length]);
+        }
 
-}
\ No newline at end of file
+        return System.nanoTime() - start;
+    }
+}
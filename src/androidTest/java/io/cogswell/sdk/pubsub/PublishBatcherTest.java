@@ -0,0 +1,62 @@
+package io.cogswell.sdk.pubsub;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PublishBatcherTest extends TestCase {
+    /**
+     * Records each batch once it has been sent, by its first message.
+     */
+    private static class RecordingSink implements PublishBatcher.Sink {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        PublishBatcher batcher;
+        boolean raced = false;
+
+        @Override
+        public void send(List<PubSubHandle.Publish> batch) {
+            if (!raced) {
+                raced = true;
+
+                // Flush the newer batch while this one is still being sent.
+                Thread flusher = new Thread() {
+                    @Override
+                    public void run() {
+                        batcher.flush();
+                    }
+                };
+                flusher.start();
+
+                try {
+                    flusher.join(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            sent.add(batch.get(0).message);
+        }
+    }
+
+    public void testFullBatchIsSentBeforeNewerBatch() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        PublishBatcher batcher = PublishBatcher.builder()
+                .withMaxBatchBytes(100)
+                .withLinger(1, TimeUnit.HOURS)
+                .build(sink);
+        sink.batcher = batcher;
+
+        batcher.submit(new PubSubHandle.Publish("chan", "first"));
+        batcher.submit(new PubSubHandle.Publish("chan", "second"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.sent.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("[first, second]", sink.sent.toString());
+    }
+}
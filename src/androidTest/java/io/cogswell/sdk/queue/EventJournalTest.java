@@ -0,0 +1,146 @@
+package io.cogswell.sdk.queue;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class EventJournalTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] record(int id) {
+        byte[] record = new byte[200];
+        record[0] = (byte) (id >> 24);
+        record[1] = (byte) (id >> 16);
+        record[2] = (byte) (id >> 8);
+        record[3] = (byte) id;
+        return record;
+    }
+
+    private static int id(EventJournal.Entry entry) {
+        byte[] record = entry.getRecord();
+        return ((record[0] & 0xff) << 24) | ((record[1] & 0xff) << 16) | ((record[2] & 0xff) << 8) | (record[3] & 0xff);
+    }
+
+    public void testRecoversInOrder() throws IOException {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 64L * 1024 * 1024);
+
+        for (int i = 0; i < 10000; i++) {
+            journal.append(record(i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            EventJournal.Entry entry = journal.peek();
+            assertEquals(i, id(entry));
+            assertTrue(journal.ack(entry));
+        }
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, 64 * 1024, 64L * 1024 * 1024);
+        reopened.append(record(10000));
+
+        for (int i = 100; i <= 10000; i++) {
+            EventJournal.Entry entry = reopened.peek();
+            assertEquals(i, id(entry));
+            assertTrue(reopened.ack(entry));
+        }
+
+        assertNull(reopened.peek());
+        // Only the active segment remains once everything has been read.
+        assertEquals(64 * 1024, reopened.getDiskUsage());
+    }
+
+    public void testDiskBudgetDropsOldest() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, 3 * 1024);
+
+        for (int i = 0; i < 100; i++) {
+            journal.append(record(i));
+        }
+
+        assertTrue(journal.getDroppedSegments() > 0);
+        assertTrue(journal.getDiskUsage() <= 3 * 1024);
+        assertTrue(id(journal.peek()) > 0);
+    }
+
+    public void testAckIsIdempotent() throws IOException {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 64L * 1024 * 1024);
+        journal.append(record(0));
+        journal.append(record(1));
+
+        EventJournal.Entry entry = journal.peek();
+        assertTrue(journal.ack(entry));
+        assertFalse(journal.ack(entry));
+        assertEquals(1, id(journal.peek()));
+    }
+
+    public void testEvictionDuringInFlightSend() throws IOException {
+        EventJournal journal = new EventJournal(directory, 1024, 3 * 1024);
+
+        for (int i = 0; i < 4; i++) {
+            journal.append(record(i));
+        }
+
+        // The reader peeks the head and starts sending it...
+        EventJournal.Entry inFlight = journal.peek();
+        assertEquals(0, id(inFlight));
+
+        // ...while the writer keeps appending until the segment being read is discarded.
+        for (int i = 4; i < 40; i++) {
+            journal.append(record(i));
+        }
+        assertTrue(journal.getDroppedSegments() > 0);
+
+        // The send completes: acknowledging the discarded record must neither throw nor
+        // consume the new head.
+        EventJournal.Entry head = journal.peek();
+        assertTrue(id(head) > 0);
+        assertFalse(journal.ack(inFlight));
+        assertEquals(id(head), id(journal.peek()));
+
+        assertTrue(journal.ack(head));
+        assertEquals(id(head) + 1, id(journal.peek()));
+    }
+
+    public void testRecoversManySegments() throws IOException {
+        int count = 20000;
+        EventJournal journal = new EventJournal(directory, 256 * 1024, 16L * 1024 * 1024);
+
+        for (int i = 0; i < count; i++) {
+            journal.append(record(i));
+
+            if (i % 1000 == 0) {
+                journal.commit();
+            }
+        }
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, 256 * 1024, 16L * 1024 * 1024);
+        assertEquals(0, reopened.getDroppedSegments());
+
+        for (int i = 0; i < count; i++) {
+            EventJournal.Entry entry = reopened.peek();
+            assertEquals(i, id(entry));
+            assertTrue(reopened.ack(entry));
+        }
+
+        assertNull(reopened.peek());
+    }
+}
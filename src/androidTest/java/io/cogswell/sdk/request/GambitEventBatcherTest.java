@@ -0,0 +1,196 @@
+package io.cogswell.sdk.request;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.GambitRequest;
+import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.response.GambitResponseEvent;
+
+public class GambitEventBatcherTest extends TestCase {
+    private static final String ACCESS_KEY = "a66ec003338b6ef20d2bab20d79e11ae";
+    private static final String CLIENT_SALT = "8121acc3e3bb630523364db444abede051bc9c7222d3800dbcb3e9156e4c9f53";
+    private static final String CLIENT_SECRET = "7ca90b848a737d16fdeaf46cc9e1ec869bdf99b1c406072972b07a0c8b966da9";
+
+    /**
+     * Records each request and leaves its response to the test.
+     */
+    private static class RecordingSink implements GambitEventBatcher.Sink {
+        final List<GambitRequest> requests = new ArrayList<>();
+        final List<SettableFuture<GambitResponse>> responses = new ArrayList<>();
+
+        @Override
+        public synchronized ListenableFuture<GambitResponse> send(GambitRequest request) {
+            SettableFuture<GambitResponse> response = SettableFuture.create();
+            requests.add(request);
+            responses.add(response);
+            notifyAll();
+            return response;
+        }
+
+        synchronized void awaitRequests(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (requests.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+        }
+    }
+
+    private static GambitRequestEvent event(String name, String value) throws Exception {
+        return new GambitRequestEvent.Builder(ACCESS_KEY, CLIENT_SALT, CLIENT_SECRET)
+                .setEventName(name)
+                .setNamespace("Testing")
+                .setAttributes(new JSONObject().put("value", value))
+                .setTimestamp("2016-05-03T17:10:00-06:00")
+                .build();
+    }
+
+    private static int batchSize(GambitRequest request) {
+        return ((GambitRequestEventBatch) request).getEvents().size();
+    }
+
+    public void testFlushesAtMaxBatchSize() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        GambitEventBatcher batcher = GambitEventBatcher.builder()
+                .withMaxBatchSize(3)
+                .withLinger(1, TimeUnit.HOURS)
+                .build(sink);
+
+        for (int i = 0; i < 7; i++) {
+            batcher.submit(event("e" + i, "v"));
+        }
+
+        assertEquals(2, sink.requests.size());
+        assertEquals(3, batchSize(sink.requests.get(0)));
+        assertEquals(3, batchSize(sink.requests.get(1)));
+
+        batcher.flush();
+        assertEquals(3, sink.requests.size());
+        assertEquals(1, batchSize(sink.requests.get(2)));
+    }
+
+    public void testFlushesAtMaxBatchBytesCountingEncodedBytes() throws Exception {
+        // Three bytes per character once encoded, so the byte budget is reached long before
+        // the character count would reach it.
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            value.append('\u20ac');
+        }
+
+        GambitRequestEvent first = event("e1", value.toString());
+        int chars = first.getBody().length();
+        assertEquals(chars + 200, first.getSignedBody().length());
+
+        RecordingSink sink = new RecordingSink();
+        GambitEventBatcher batcher = GambitEventBatcher.builder()
+                .withMaxBatchBytes(2 * chars + 50)
+                .withLinger(1, TimeUnit.HOURS)
+                .build(sink);
+
+        batcher.submit(first);
+        batcher.submit(event("e2", value.toString()));
+
+        assertEquals(1, sink.requests.size());
+        assertEquals(1, batchSize(sink.requests.get(0)));
+    }
+
+    public void testFlushesAfterLinger() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        GambitEventBatcher batcher = GambitEventBatcher.builder()
+                .withLinger(20, TimeUnit.MILLISECONDS)
+                .build(sink);
+
+        batcher.submit(event("e1", "v"));
+        batcher.submit(event("e2", "v"));
+        assertEquals(0, sink.requests.size());
+
+        sink.awaitRequests(1);
+        assertEquals(1, sink.requests.size());
+        assertEquals(2, batchSize(sink.requests.get(0)));
+    }
+
+    public void testMapsResultsToEachEvent() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        GambitEventBatcher batcher = GambitEventBatcher.builder()
+                .withLinger(1, TimeUnit.HOURS)
+                .build(sink);
+
+        ListenableFuture<GambitResponse> first = batcher.submit(event("e1", "v"));
+        ListenableFuture<GambitResponse> second = batcher.submit(event("e2", "v"));
+        batcher.flush();
+
+        sink.responses.get(0).set(new GambitResponseEvent(
+                "{\"results\":[{\"message\":\"first\"},{\"message\":\"second\"}]}", 200));
+
+        assertEquals("first", ((GambitResponseEvent) first.get()).getMessage());
+        assertEquals("second", ((GambitResponseEvent) second.get()).getMessage());
+    }
+
+    public void testFallsBackToSingleSends() throws Exception {
+        int[] codes = {404, 405, 501};
+
+        for (int code : codes) {
+            RecordingSink sink = new RecordingSink();
+            GambitEventBatcher batcher = GambitEventBatcher.builder()
+                    .withLinger(1, TimeUnit.HOURS)
+                    .build(sink);
+
+            ListenableFuture<GambitResponse> first = batcher.submit(event("e1", "v"));
+            ListenableFuture<GambitResponse> second = batcher.submit(event("e2", "v"));
+            batcher.flush();
+
+            sink.responses.get(0).set(new GambitResponseEvent("{\"message\":\"not found\"}", code));
+
+            assertFalse(batcher.isBatchRouteAvailable());
+            assertEquals(3, sink.requests.size());
+            assertTrue(sink.requests.get(1) instanceof GambitRequestEvent);
+            assertTrue(sink.requests.get(2) instanceof GambitRequestEvent);
+
+            GambitResponse one = new GambitResponseEvent("{\"message\":\"one\"}", 200);
+            GambitResponse two = new GambitResponseEvent("{\"message\":\"two\"}", 200);
+            sink.responses.get(1).set(one);
+            sink.responses.get(2).set(two);
+
+            assertSame(one, first.get());
+            assertSame(two, second.get());
+
+            batcher.submit(event("e3", "v"));
+            assertEquals(4, sink.requests.size());
+            assertTrue(sink.requests.get(3) instanceof GambitRequestEvent);
+        }
+    }
+
+    public void testFailureFailsEveryEvent() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        GambitEventBatcher batcher = GambitEventBatcher.builder()
+                .withLinger(1, TimeUnit.HOURS)
+                .build(sink);
+
+        ListenableFuture<GambitResponse> first = batcher.submit(event("e1", "v"));
+        ListenableFuture<GambitResponse> second = batcher.submit(event("e2", "v"));
+        batcher.flush();
+
+        sink.responses.get(0).setException(new IOException("offline"));
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.cogswell.sdk.subscription;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CogsSubscriptionKeyTest extends TestCase {
+    public void testCanonicalForm() throws Exception {
+        JSONObject a = new JSONObject("{\"team\":\"red\",\"level\":3,\"tags\":[\"x\",{\"b\":1,\"a\":2.0}]}");
+        JSONObject b = new JSONObject("{\"tags\":[\"x\",{\"a\":2,\"b\":1}],\"level\":3.0,\"team\":\"red\"}");
+
+        CogsSubscriptionKey keyA = CogsSubscriptionKey.of("ns", a);
+        CogsSubscriptionKey keyB = CogsSubscriptionKey.of("ns", b);
+
+        assertEquals(keyA, keyB);
+        assertEquals(keyA.hashCode(), keyB.hashCode());
+        assertEquals("{\"level\":3,\"tags\":[\"x\",{\"a\":2,\"b\":1}],\"team\":\"red\"}", keyA.getCanonicalAttributes());
+
+        assertFalse(keyA.equals(CogsSubscriptionKey.of("other", a)));
+        assertFalse(keyA.equals(CogsSubscriptionKey.of("ns", new JSONObject("{\"team\":\"blue\",\"level\":3}"))));
+        assertFalse(CogsSubscriptionKey.of("ns", null).equals(CogsSubscriptionKey.of("ns", new JSONObject())));
+    }
+
+    public void testRegistryFindsExistingSubscription() throws Exception {
+        ConcurrentHashMap<CogsSubscription, String> registry = new ConcurrentHashMap<>();
+
+        registry.put(new CogsSubscription("ns", new JSONObject("{\"a\":1,\"b\":\"x\"}")), "socket");
+
+        CogsSubscription again = new CogsSubscription("ns", new JSONObject("{\"b\":\"x\",\"a\":1}"));
+        assertEquals("socket", registry.get(again));
+        assertEquals("socket", registry.putIfAbsent(again, "second socket"));
+        assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,115 @@
+package io.cogswell.sdk.subscription;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class MessageDeduplicatorTest extends TestCase {
+    private static final int IDS = 100000;
+
+    private static String[] ids(int count) {
+        String[] ids = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+
+        return ids;
+    }
+
+    public void testExactSuppressesRedelivery() {
+        MessageDeduplicator dedup = MessageDeduplicator.builder()
+                .withMaxIds(3)
+                .build();
+
+        assertFalse(dedup.isDuplicate("a"));
+        assertFalse(dedup.isDuplicate("b"));
+        assertTrue(dedup.isDuplicate("a"));
+        assertFalse(dedup.isDuplicate(null));
+        assertFalse(dedup.isDuplicate(null));
+
+        // The oldest id is forgotten once the bound is exceeded.
+        assertFalse(dedup.isDuplicate("c"));
+        assertFalse(dedup.isDuplicate("d"));
+        assertFalse(dedup.isDuplicate("a"));
+        assertTrue(dedup.isDuplicate("d"));
+
+        assertEquals(2, dedup.getDuplicateCount());
+    }
+
+    public void testExactForgetsAfterWindow() throws Exception {
+        MessageDeduplicator dedup = MessageDeduplicator.builder()
+                .withWindow(50, TimeUnit.MILLISECONDS)
+                .build();
+
+        assertFalse(dedup.isDuplicate("a"));
+        assertTrue(dedup.isDuplicate("a"));
+        Thread.sleep(100);
+        assertFalse(dedup.isDuplicate("a"));
+    }
+
+    public void testBloomFalsePositiveRate() {
+        MessageDeduplicator dedup = MessageDeduplicator.builder()
+                .withMaxIds(IDS)
+                .withFalsePositiveRate(0.01)
+                .build();
+
+        String[] ids = ids(IDS);
+        int falsePositives = 0;
+
+        for (String id : ids) {
+            if (dedup.isDuplicate(id)) {
+                falsePositives++;
+            }
+        }
+        for (String id : ids) {
+            assertTrue(dedup.isDuplicate(id));
+        }
+
+        assertTrue(falsePositives < IDS * 0.02);
+    }
+
+    /**
+     * Logs the memory per million tracked ids and the time per message for each mode.
+     */
+    public void testFootprint() {
+        String[] ids = ids(IDS);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+
+        MessageDeduplicator exact = MessageDeduplicator.builder().withMaxIds(IDS).build();
+        long exactNanos = run(exact, ids);
+
+        System.gc();
+        long exactBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        MessageDeduplicator bloom = MessageDeduplicator.builder()
+                .withMaxIds(IDS)
+                .withFalsePositiveRate(0.01)
+                .build();
+        long bloomNanos = run(bloom, ids);
+
+        Log.i("Cogs-SDK", "Exact: ~" + exactBytes * (1000000 / IDS) / (1024 * 1024) +
+                " MB per million ids (measured, excluding the id strings), " + exactNanos / IDS + " ns per message.");
+        Log.i("Cogs-SDK", "Bloom 1%: " + 2 * MessageDeduplicator.bloomBytesPerMillion(0.01) / 1024 +
+                " KB per million ids (two filters), " + bloomNanos / IDS + " ns per message.");
+
+        assertEquals(IDS, exact.getCheckedCount());
+        assertEquals(IDS, bloom.getCheckedCount());
+    }
+
+    private static long run(MessageDeduplicator dedup, String[] ids) {
+        long start = System.nanoTime();
+
+        for (String id : ids) {
+            dedup.isDuplicate(id);
+        }
+
+        return System.nanoTime() - start;
+    }
+}
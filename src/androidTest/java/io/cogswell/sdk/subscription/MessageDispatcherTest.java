@@ -0,0 +1,164 @@
+package io.cogswell.sdk.subscription;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MessageDispatcherTest extends TestCase {
+    /**
+     * Runs tasks only when asked, so the buffer can be filled deterministically.
+     */
+    private static class ManualExecutor implements Executor {
+        final LinkedList<Runnable> tasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.removeFirst().run();
+            }
+        }
+    }
+
+    private static class Recorder implements MessageDispatcher.Receiver {
+        final List<String> ids = new ArrayList<>();
+
+        @Override
+        public synchronized void message(CogsMessage message) {
+            ids.add(message.getMessageId());
+        }
+    }
+
+    private static CogsMessage message(String eventName, String id) {
+        return new CogsMessage("ns", null, null, null, eventName, id, null, null, null);
+    }
+
+    public void testPreservesOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch done = new CountDownLatch(1000);
+        final List<String> ids = new ArrayList<>();
+
+        MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .withCapacity(16)
+                .withOverflowPolicy(MessageDispatcher.OverflowPolicy.BLOCK)
+                .build(executor, new MessageDispatcher.Receiver() {
+                    @Override
+                    public void message(CogsMessage message) {
+                        ids.add(message.getMessageId());
+                        done.countDown();
+                    }
+                });
+
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.dispatch(message("e", Integer.toString(i)));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        // The counts are updated after the receiver returns.
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i), ids.get(i));
+        }
+        assertEquals(1000, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertTrue(dispatcher.getMaxQueueDepth() <= 16);
+    }
+
+    public void testDropOldest() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+
+        MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .withCapacity(3)
+                .withOverflowPolicy(MessageDispatcher.OverflowPolicy.DROP_OLDEST)
+                .build(executor, recorder);
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(message("e", Integer.toString(i)));
+        }
+
+        assertEquals(3, dispatcher.getQueueDepth());
+        executor.runAll();
+
+        assertEquals(2, dispatcher.getDroppedCount());
+        assertEquals("[2, 3, 4]", recorder.ids.toString());
+    }
+
+    public void testDefaultNeverBlocksReader() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+
+        MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .withCapacity(2)
+                .build(executor, recorder);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(message("e", Integer.toString(i)));
+        }
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(2, dispatcher.getDroppedCount());
+        assertEquals("[2, 3]", recorder.ids.toString());
+    }
+
+    public void testConflate() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+
+        MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .withCapacity(2)
+                .withOverflowPolicy(MessageDispatcher.OverflowPolicy.CONFLATE)
+                .build(executor, recorder);
+
+        dispatcher.dispatch(message("score", "1"));
+        dispatcher.dispatch(message("chat", "2"));
+        dispatcher.dispatch(message("score", "3"));
+        dispatcher.dispatch(message("score", "4"));
+        dispatcher.dispatch(message("level", "5"));
+        executor.runAll();
+
+        assertEquals(2, dispatcher.getConflatedCount());
+        assertEquals(1, dispatcher.getDroppedCount());
+        assertEquals("[2, 5]", recorder.ids.toString());
+    }
+
+    public void testCloseReleasesBlockedReader() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        final MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .withCapacity(1)
+                .withOverflowPolicy(MessageDispatcher.OverflowPolicy.BLOCK)
+                .build(executor, new Recorder());
+
+        dispatcher.dispatch(message("e", "1"));
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(message("e", "2"));
+            }
+        };
+        reader.start();
+
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        dispatcher.close();
+        reader.join(1000);
+        assertFalse(reader.isAlive());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+}
@@ -0,0 +1,71 @@
+package io.cogswell.sdk.subscription;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public class ResumeMarkerTest extends TestCase {
+    private static CogsSubscriptionRequest request() throws Exception {
+        return CogsSubscriptionRequest.builder()
+                .withAccessKey("access")
+                .withClientSalt("salt")
+                .withClientSecret("secret")
+                .withNamespace("ns")
+                .withTopicAttributes(new JSONObject("{\"team\":\"red\"}"))
+                .build();
+    }
+
+    public void testPayloadCarriesMarker() throws Exception {
+        assertFalse(AbstractCogsWebSocket.buildPayload(request(), null).has("last_message_id"));
+        assertEquals("msg-7", AbstractCogsWebSocket.buildPayload(request(), "msg-7").getString("last_message_id"));
+    }
+
+    public void testFileStoreSurvivesRestart() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "resume-marker-test-" + System.nanoTime());
+        CogsSubscriptionKey key = request().getSubscription().getKey();
+
+        FileResumeMarkerStore store = new FileResumeMarkerStore(directory, 1, TimeUnit.SECONDS);
+        assertNull(store.load(key));
+
+        store.save(key, "msg-41");
+        store.save(key, "msg-42");
+        store.flush();
+
+        FileResumeMarkerStore restarted = new FileResumeMarkerStore(directory, 1, TimeUnit.SECONDS);
+        assertEquals("msg-42", restarted.load(key));
+
+        new File(directory, "resume-markers.properties").delete();
+        directory.delete();
+    }
+
+    public void testMemoryStoreRemovesMarker() throws Exception {
+        CogsSubscriptionKey key = request().getSubscription().getKey();
+        MemoryResumeMarkerStore store = new MemoryResumeMarkerStore();
+
+        store.save(key, "msg-42");
+        store.remove(key);
+        assertNull(store.load(key));
+    }
+
+    public void testFileStoreRemovesMarkerAcrossRestart() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "resume-marker-test-" + System.nanoTime());
+        CogsSubscriptionKey key = request().getSubscription().getKey();
+
+        FileResumeMarkerStore store = new FileResumeMarkerStore(directory, 1, TimeUnit.SECONDS);
+        store.save(key, "msg-42");
+        store.flush();
+
+        store.remove(key);
+        assertNull(store.load(key));
+        store.flush();
+
+        FileResumeMarkerStore restarted = new FileResumeMarkerStore(directory, 1, TimeUnit.SECONDS);
+        assertNull(restarted.load(key));
+
+        new File(directory, "resume-markers.properties").delete();
+        directory.delete();
+    }
+}
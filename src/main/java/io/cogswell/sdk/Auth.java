@@ -2,10 +2,8 @@ package io.cogswell.sdk;
 
 import android.util.Base64;
 
-import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
-import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
@@ -113,27 +111,21 @@ public class Auth {
              "}",
              identity, perms, timeISO8601);
 
+        byte[] payloadBytes = payload.getBytes(Methods.UTF_8);
+
         // Compute and xor the hmacs.
         byte[] hmacXored = new byte[32];
         for (Key key : permissionToKeyMap.values()) {
             try {
-                String hmac = Methods.getHmac(payload, key.permKey);
-
-                byte[] hmacHex = Hex.decodeHex(hmac.toCharArray());
-                mutateXor(hmacXored, hmacHex);
-            } catch (NoSuchAlgorithmException | UnsupportedEncodingException | InvalidKeyException | DecoderException e) {
+                mutateXor(hmacXored, Methods.getHmacBytes(payloadBytes, key.permKey));
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
                 throw new AuthKeyError( e );
             }
         }
 
-        try {
-            String payloadBase64 = Base64.encodeToString(payload.getBytes("UTF-8"), Base64.NO_WRAP);
-            String payloadHmac = new String(Hex.encodeHex(hmacXored));
-            PayloadHeaders ph = new PayloadHeaders(payloadBase64, payloadHmac);
-            return ph;
-        } catch (UnsupportedEncodingException e) {
-            throw new AuthKeyError( e );
-        }
+        String payloadBase64 = Base64.encodeToString(payloadBytes, Base64.NO_WRAP);
+        String payloadHmac = new String(Hex.encodeHex(hmacXored));
+        return new PayloadHeaders(payloadBase64, payloadHmac);
     }
 
     /**
@@ -0,0 +1,62 @@
+package io.cogswell.sdk;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks whether the device currently has network connectivity.
+ *
+ * The SDK does not hold an Android {@link android.content.Context}, so the application is
+ * responsible for feeding this monitor, typically from a CONNECTIVITY_ACTION broadcast
+ * receiver. Until told otherwise the monitor assumes the device is connected.
+ */
+public class ConnectivityMonitor {
+    /**
+     * Notified whenever the connectivity state changes.
+     */
+    public interface Listener {
+        /**
+         * Called after the connectivity state has changed.
+         *
+         * @param connected <tt>true</tt> if the device is now connected
+         */
+        public void connectivityChanged(boolean connected);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean connected = true;
+
+    /**
+     * Update the connectivity state. Listeners are only notified on a change.
+     *
+     * @param connected <tt>true</tt> if the device is connected
+     */
+    public void setConnected(boolean connected) {
+        boolean changed;
+
+        synchronized (this) {
+            changed = this.connected != connected;
+            this.connected = connected;
+        }
+
+        if (changed) {
+            for (Listener listener : listeners) {
+                listener.connectivityChanged(connected);
+            }
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if the device is believed to be connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+}
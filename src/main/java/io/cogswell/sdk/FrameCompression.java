@@ -0,0 +1,395 @@
+package io.cogswell.sdk;
+
+import android.util.Log;
+
+import com.koushikdutta.async.ByteBufferList;
+import com.koushikdutta.async.DataEmitter;
+import com.koushikdutta.async.callback.DataCallback;
+import com.koushikdutta.async.http.Headers;
+import com.koushikdutta.async.http.WebSocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Deflate compression of WebSocket messages.
+ *
+ * The WebSocket client does not implement the permessage-deflate extension, so the same
+ * scheme is carried one level up. The offer is sent in the {@link #HEADER} header of the
+ * handshake, with the parameters of permessage-deflate. A server which accepts it sends
+ * compressed messages as binary frames holding the raw DEFLATE stream, sync-flushed with the
+ * trailing 00 00 ff ff removed; uncompressed messages still arrive as text. The client only
+ * compresses what it sends once the server has sent it a compressed message, so a server
+ * which ignores the offer sees plain text throughout.
+ *
+ * With context takeover, each direction keeps its compression window from one message to the
+ * next, so the names and values repeated by every message cost almost nothing after the
+ * first. Without it, each message is compressed on its own, which saves the memory of the
+ * windows at some cost in ratio.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class FrameCompression {
+    /**
+     * The handshake header carrying the offer.
+     */
+    public static final String HEADER = "Message-Deflate";
+
+    private static final byte[] TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+    /**
+     * The compression state of one WebSocket connection.
+     */
+    public class Session {
+        private final Inflater inflater = new Inflater(true);
+        private final Deflater deflater = new Deflater(level, true);
+        private final byte[] buffer = new byte[4096];
+
+        private volatile boolean accepted = false;
+        private boolean ended = false;
+
+        private Session() {}
+
+        /**
+         * Deliver the messages of a WebSocket to a callback, inflating compressed ones. This
+         * replaces the string and data callbacks of the WebSocket.
+         *
+         * @param webSocket the {@link WebSocket}
+         * @param callback the {@link WebSocket.StringCallback callback} for every message
+         */
+        public void attach(WebSocket webSocket, final WebSocket.StringCallback callback) {
+            webSocket.setStringCallback(callback);
+            webSocket.setDataCallback(new DataCallback() {
+                @Override
+                public void onDataAvailable(DataEmitter emitter, ByteBufferList data) {
+                    byte[] frame = data.getAllByteArray();
+                    data.recycle();
+
+                    String message;
+                    try {
+                        message = inflate(frame);
+                    } catch (DataFormatException e) {
+                        Log.e("Cogs-SDK", "Error inflating WebSocket message.", e);
+                        return;
+                    }
+
+                    callback.onStringAvailable(message);
+                }
+            });
+        }
+
+        /**
+         * Inflate a compressed message. Messages are inflated in the order they arrived.
+         *
+         * @param frame the payload of a binary frame
+         *
+         * @return the message
+         *
+         * @throws DataFormatException if the payload is not valid DEFLATE data
+         */
+        public synchronized String inflate(byte[] frame) throws DataFormatException {
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(frame.length * 4);
+
+            inflater.setInput(frame);
+            drain(out);
+            inflater.setInput(TAIL);
+            drain(out);
+
+            if (!contextTakeover) {
+                inflater.reset();
+            }
+
+            accepted = true;
+            inflatedCount.incrementAndGet();
+            compressedIn.addAndGet(frame.length);
+            plainIn.addAndGet(out.size());
+            inflateNanos.addAndGet(System.nanoTime() - start);
+
+            return new String(out.toByteArray(), Methods.UTF_8);
+        }
+
+        private void drain(ByteArrayOutputStream out) throws DataFormatException {
+            int count;
+
+            while ((count = inflater.inflate(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+
+            if (inflater.needsDictionary()) {
+                throw new DataFormatException("Preset dictionaries are not supported.");
+            }
+        }
+
+        /**
+         * Compress a message.
+         *
+         * @param message the message
+         *
+         * @return the payload of a binary frame
+         */
+        public byte[] deflate(String message) {
+            byte[] plain = message.getBytes(Methods.UTF_8);
+            return deflate(plain, 0, plain.length);
+        }
+
+        /**
+         * Compress a message already encoded as UTF-8.
+         *
+         * @param plain the buffer holding the message
+         * @param offset the offset of the message in the buffer
+         * @param length the length of the message in bytes
+         *
+         * @return the payload of a binary frame
+         */
+        public synchronized byte[] deflate(byte[] plain, int offset, int length) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+
+            deflater.setInput(plain, offset, length);
+
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, count);
+            } while (count == buffer.length);
+
+            if (!contextTakeover) {
+                deflater.reset();
+            }
+
+            byte[] frame = out.toByteArray();
+            int frameLength = frame.length;
+
+            if (frameLength >= TAIL.length && Arrays.equals(TAIL, Arrays.copyOfRange(frame, frameLength - TAIL.length, frameLength))) {
+                frame = Arrays.copyOf(frame, frameLength - TAIL.length);
+            }
+
+            deflatedCount.incrementAndGet();
+            plainOut.addAndGet(length);
+            compressedOut.addAndGet(frame.length);
+            deflateNanos.addAndGet(System.nanoTime() - start);
+
+            return frame;
+        }
+
+        /**
+         * Send a message, compressed if the server has shown it accepts compression and the
+         * message is long enough to benefit.
+         *
+         * @param webSocket the {@link WebSocket}
+         * @param message the message
+         */
+        public void send(WebSocket webSocket, String message) {
+            if (accepted && message.length() >= threshold) {
+                byte[] frame;
+
+                // A send racing the close may still hold this session after it has ended.
+                synchronized (this) {
+                    frame = ended ? null : deflate(message);
+                }
+
+                if (frame != null) {
+                    webSocket.send(frame);
+                    return;
+                }
+            }
+
+            webSocket.send(message);
+        }
+
+        /**
+         * Send a message written by a {@link JsonBodyWriter}. A compressed message is deflated
+         * straight from the writer's bytes; only an uncompressed one is decoded to a String.
+         *
+         * @param webSocket the {@link WebSocket}
+         * @param message the writer holding the message
+         */
+        public void send(WebSocket webSocket, JsonBodyWriter message) {
+            if (accepted && message.length() >= threshold) {
+                byte[] frame;
+
+                // A send racing the close may still hold this session after it has ended.
+                synchronized (this) {
+                    frame = ended ? null : deflate(message.buffer(), 0, message.length());
+                }
+
+                if (frame != null) {
+                    webSocket.send(frame);
+                    return;
+                }
+            }
+
+            webSocket.send(message.toString());
+        }
+
+        /**
+         * @return <tt>true</tt> once the server has sent a compressed message
+         */
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Release the native compression state. Called once the WebSocket closes.
+         */
+        public synchronized void end() {
+            ended = true;
+            inflater.end();
+            deflater.end();
+        }
+    }
+
+    private final boolean contextTakeover;
+    private final int level;
+    private final int threshold;
+
+    private final AtomicLong inflatedCount = new AtomicLong();
+    private final AtomicLong compressedIn = new AtomicLong();
+    private final AtomicLong plainIn = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+    private final AtomicLong deflatedCount = new AtomicLong();
+    private final AtomicLong plainOut = new AtomicLong();
+    private final AtomicLong compressedOut = new AtomicLong();
+    private final AtomicLong deflateNanos = new AtomicLong();
+
+    private FrameCompression(Builder builder) {
+        this.contextTakeover = builder.contextTakeover;
+        this.level = builder.level;
+        this.threshold = builder.threshold;
+    }
+
+    /**
+     * @return the value of the {@link #HEADER} header offering compression
+     */
+    public String getOffer() {
+        return contextTakeover ? "permessage-deflate" :
+                "permessage-deflate; client_no_context_takeover; server_no_context_takeover";
+    }
+
+    /**
+     * Add the offer to the headers of a handshake.
+     *
+     * @param headers the {@link Headers headers}
+     */
+    public void offer(Headers headers) {
+        headers.add(HEADER, getOffer());
+    }
+
+    /**
+     * Begin the compression state of a new connection.
+     *
+     * @return the {@link Session session}, which must be ended when the WebSocket closes
+     */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * @return the number of messages inflated
+     */
+    public long getInflatedCount() {
+        return inflatedCount.get();
+    }
+
+    /**
+     * @return the number of messages deflated
+     */
+    public long getDeflatedCount() {
+        return deflatedCount.get();
+    }
+
+    /**
+     * @return the bytes saved on messages received, compressed against inflated size
+     */
+    public long getBytesSavedIn() {
+        return plainIn.get() - compressedIn.get();
+    }
+
+    /**
+     * @return the bytes saved on messages sent, compressed against plain size
+     */
+    public long getBytesSavedOut() {
+        return plainOut.get() - compressedOut.get();
+    }
+
+    /**
+     * @return the mean time, in microseconds, taken to inflate a message
+     */
+    public double getAverageInflateMicros() {
+        long count = inflatedCount.get();
+        return count == 0 ? 0 : inflateNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return the mean time, in microseconds, taken to deflate a message
+     */
+    public double getAverageDeflateMicros() {
+        long count = deflatedCount.get();
+        return count == 0 ? 0 : deflateNanos.get() / 1000.0 / count;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean contextTakeover = true;
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private int threshold = 128;
+
+        private Builder() {}
+
+        /**
+         * @param contextTakeover whether each direction keeps its compression window between messages
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withContextTakeover(boolean contextTakeover) {
+            this.contextTakeover = contextTakeover;
+            return this;
+        }
+
+        /**
+         * @param level the {@link Deflater} compression level, from 0 to 9
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withLevel(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param threshold the length below which sent messages are left uncompressed
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withThreshold(int threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Build the compression configuration.
+         *
+         * @return the {@link FrameCompression compression}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public FrameCompression build() throws CogsBuilderException {
+            if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+                throw new CogsBuilderException("Level must be between 0 and 9.");
+            if (threshold < 0)
+                throw new CogsBuilderException("Threshold must not be negative.");
+
+            return new FrameCompression(this);
+        }
+    }
+}
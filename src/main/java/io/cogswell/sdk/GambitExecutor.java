@@ -0,0 +1,208 @@
+package io.cogswell.sdk;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * The executor behind {@link GambitSDKService}.
+ *
+ * By default it behaves like a cached thread pool. In bounded mode it runs a fixed number
+ * of workers fed from a bounded queue, and applies the configured {@link OverflowPolicy}
+ * when a producer outruns the workers.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class GambitExecutor extends ThreadPoolExecutor {
+
+    /**
+     * What to do with a task submitted while every worker is busy and the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the submitting thread until there is room in the queue.
+         */
+        BLOCK,
+
+        /**
+         * Run the task on the submitting thread.
+         */
+        CALLER_RUNS,
+
+        /**
+         * Discard (and cancel) the oldest queued task to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Reject the task with a {@link RejectedExecutionException}.
+         */
+        FAIL_FAST
+    }
+
+    private final boolean bounded;
+    private final AtomicLong rejectedCount;
+    private final AtomicLong droppedCount;
+
+    private GambitExecutor(int coreWorkers, int maxWorkers, BlockingQueue<Runnable> queue,
+                           OverflowHandler handler, boolean bounded) {
+        super(coreWorkers, maxWorkers, 60L, TimeUnit.SECONDS, queue, handler);
+        this.bounded = bounded;
+        this.rejectedCount = handler.rejectedCount;
+        this.droppedCount = handler.droppedCount;
+    }
+
+    /**
+     * @return <tt>true</tt> if this executor has a fixed worker count and a bounded queue
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return the number of submissions which found the queue full, regardless of the outcome
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of queued tasks which were discarded by {@link OverflowPolicy#DROP_OLDEST}
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static class OverflowHandler implements RejectedExecutionHandler {
+        private final OverflowPolicy policy;
+        private final AtomicLong rejectedCount = new AtomicLong();
+        private final AtomicLong droppedCount = new AtomicLong();
+
+        OverflowHandler(OverflowPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejectedCount.incrementAndGet();
+
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down.");
+            }
+
+            switch (policy) {
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for queue space.", e);
+                    }
+                    break;
+
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+
+                case DROP_OLDEST:
+                    Runnable oldest = executor.getQueue().poll();
+
+                    if (oldest != null) {
+                        droppedCount.incrementAndGet();
+
+                        // Release anyone waiting on the discarded task.
+                        if (oldest instanceof Future) {
+                            ((Future<?>) oldest).cancel(false);
+                        }
+                    }
+
+                    executor.execute(task);
+                    break;
+
+                case FAIL_FAST:
+                default:
+                    throw new RejectedExecutionException("Executor queue is full.");
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean bounded = false;
+        private int workers = 4;
+        private int queueCapacity = 256;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        private Builder() {}
+
+        /**
+         * Switch to bounded mode with a fixed number of workers and a bounded queue.
+         *
+         * @param workers the number of worker threads
+         * @param queueCapacity the maximum number of tasks waiting for a worker
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withBounds(int workers, int queueCapacity) {
+            this.bounded = true;
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Only applies in bounded mode.
+         *
+         * @param overflowPolicy the {@link OverflowPolicy policy} to apply when the queue is full
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Build the {@link GambitExecutor executor}, validating the configuration.
+         *
+         * @return the new {@link GambitExecutor executor}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public GambitExecutor build() {
+            if (overflowPolicy == null)
+                throw new CogsBuilderException("Overflow policy must not be null.");
+
+            OverflowHandler handler = new OverflowHandler(overflowPolicy);
+
+            if (!bounded) {
+                return new GambitExecutor(0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>(), handler, false);
+            }
+
+            if (workers < 1)
+                throw new CogsBuilderException("Worker count must be positive.");
+            if (queueCapacity < 1)
+                throw new CogsBuilderException("Queue capacity must be positive.");
+
+            return new GambitExecutor(workers, workers, new ArrayBlockingQueue<Runnable>(queueCapacity), handler, true);
+        }
+    }
+}
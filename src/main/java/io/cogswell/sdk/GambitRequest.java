@@ -14,6 +14,11 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.Callable;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -23,7 +28,6 @@ import okhttp3.Response;
 public abstract class GambitRequest implements Callable<GambitResponse> {
 
     public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    OkHttpClient client = new OkHttpClient();
 
     /**
      * Indicate to the server that the request is made by this library. May be useful for debugging.
@@ -62,6 +66,15 @@ public abstract class GambitRequest implements Callable<GambitResponse> {
         return mBaseUrl;
     }
 
+    /**
+     * Supplies the HTTP client used to execute this request. All requests share the
+     * pooled client owned by {@link GambitSDKService}.
+     * @return The shared {@link OkHttpClient}
+     */
+    protected OkHttpClient getClient() {
+        return GambitSDKService.getInstance().getTransport().getClient();
+    }
+
     /**
      * Used by the executor thread loop to run the task in background.
      * @return A {@link GambitResponse} inheriting object
@@ -69,35 +82,100 @@ public abstract class GambitRequest implements Callable<GambitResponse> {
      */
     @Override
     public GambitResponse call() throws IOException {
-        
+        Response responseObject = getClient().newCall(buildRequest()).execute();
+
+        return readResponse(responseObject);
+    }
+
+    /**
+     * Executes the request asynchronously. No thread is blocked by the caller while the request
+     * is in flight; the HTTP client's dispatcher completes the returned future once the response
+     * has been read.
+     * @return A future which will contain a {@link GambitResponse} inheriting object
+     */
+    public ListenableFuture<GambitResponse> enqueue() {
+        final SettableFuture<GambitResponse> future = SettableFuture.create();
+
+        try {
+            getClient().newCall(buildRequest()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    future.setException(e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try {
+                        future.set(readResponse(response));
+                    } catch (Throwable t) {
+                        future.setException(t);
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            future.setException(t);
+        }
+
+        return future;
+    }
+
+    /**
+     * Assemble the HTTP request from the URL, body and parameters supplied by the inheriting object.
+     * @return The {@link Request} to execute
+     */
+    protected Request buildRequest() {
         URL url = getUrl();
-        String body = getBody();
+        RequestBody body = getRequestBody();
 
-        RequestBody bodyJson = RequestBody.create(JSON, body);
         Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
                 .header("User-Agent", API_USER_AGENT)
                 .header("Content-Type", "application/json")
                 .header("Accept", "application/json");
-         //       .method(getMethod(), bodyJson);
 
         setRequestParams(requestBuilder); //allow adapter to set more stuff
 
-        if (body.length() > 0)
-        {
-            requestBuilder.method(getMethod(), bodyJson);
-        } else {
-            requestBuilder.method(getMethod(), null);
-        }
+        requestBuilder.method(getMethod(), body);
 
-        Request request = requestBuilder.build();
-        Response responseObject = client.newCall(request).execute();
+        return requestBuilder.build();
+    }
 
+    /**
+     * Supply the HTTP request body. By default this wraps {@link #getBody()}; inheriting objects
+     * which can produce their body as bytes directly may override this to avoid the String.
+     * @return The request body, or null if the request has no body
+     */
+    protected RequestBody getRequestBody() {
+        String body = getBody();
+
+        return body.length() > 0 ? RequestBody.create(JSON, body) : null;
+    }
+
+    /**
+     * Read the HTTP response and let the inheriting object wrap it.
+     * @param responseObject The HTTP response
+     * @return A {@link GambitResponse} inheriting object
+     * @throws IOException if the response body cannot be read
+     */
+    protected GambitResponse readResponse(Response responseObject) throws IOException {
         int responseCode = responseObject.code();
-        String response = responseObject.body().string();
+        byte[] response = responseObject.body().bytes();
 
-        return getResponse(response.toString(), responseCode);
+        return getResponse(response, responseCode);
     }
+
+    /**
+     * This method let's the {@link GambitRequest} inheriting object build it's own {@link GambitResponse}
+     * object straight from the response bytes. By default the bytes are decoded and passed to
+     * {@link #getResponse(String, int)}; inheriting objects whose responses parse lazily override this.
+     * @param response The RAW HTTP response body as UTF-8 bytes
+     * @param code The RAW HTTP response code as an integer
+     * @return An {@link GambitResponse} inheriting object
+     */
+    protected GambitResponse getResponse(byte[] response, int code) {
+        return getResponse(new String(response, Methods.UTF_8), code);
+    }
+
     /**
      * Define the HTTP method to be used to make the API call
      * @return POST/GET or whatever you need
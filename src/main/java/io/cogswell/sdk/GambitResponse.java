@@ -5,6 +5,8 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import io.cogswell.sdk.json.JsonScanner;
+
 public class GambitResponse {
 
     /**
@@ -33,44 +35,127 @@ public class GambitResponse {
     protected String mErrorDetails;
     
     /**
-     * JSON representation of the mRawBody; not always populated
+     * JSON representation of the mRawBody; built by the first call to {@link #getObject()}
      */
     protected JSONObject mJson;
 
+    /**
+     * raw response body, as read from the wire; mRawBody is decoded from it on demand
+     */
+    protected byte[] mRawBytes;
+
+    /**
+     * the "message" member of the response, if present
+     */
+    private String mStatusMessage;
+
+    /**
+     * the "error_message" member of the response, if present
+     */
+    private String mStatusError;
+
+    /**
+     * whether the body scanned as a JSON object
+     */
+    private boolean mIsObject;
+
+    private static final byte[] MESSAGE = "message".getBytes(Methods.UTF_8);
+    private static final byte[] ERROR_MESSAGE = "error_message".getBytes(Methods.UTF_8);
+    private static final byte[] DETAILS = "details".getBytes(Methods.UTF_8);
+
     /**
      * Create an instance to wrap an API call response
      * @param response The raw HTTP response body as text
      * @param code The raw HTTP response code as an integer
      */
     public GambitResponse(String response, int code) {
+        this(response.getBytes(Methods.UTF_8), code);
         mRawBody = response;
+    }
+
+    /**
+     * Create an instance to wrap an API call response. Only the status members (message,
+     * error_message and details) are read up front, by a streaming scan of the body; the full
+     * JSON tree is built the first time {@link #getObject()} is called.
+     * @param response The raw HTTP response body as UTF-8 bytes
+     * @param code The raw HTTP response code as an integer
+     */
+    public GambitResponse(byte[] response, int code) {
+        mRawBytes = response;
         mRawCode = code;
-        //Log.d("response3", response);
-        //Log.d("code", String.valueOf(code));
+
         try {
-            mJson = new JSONObject(response);
-            
-            if (mJson.has("error_message")) {
+            scanStatus();
+            mIsObject = true;
+
+            if (mStatusError != null) {
                 mIsSuccess = false;
-                
-                mErrorCode = mJson.getString("error_message");
-                
-                if (mJson.has("details")) {
-                    mErrorDetails = mJson.getString("details");
-                }
+
+                mErrorCode = mStatusError;
             }
             else {
                 mIsSuccess = true;
+                mErrorDetails = null;
             }
         }
         catch (JSONException e) {
             //bad response
             e.printStackTrace();
             mIsSuccess = false;
-            
+            mStatusMessage = null;
+            mStatusError = null;
+
+            mErrorCode = "UNKNOWN";
+            mErrorDetails = e.getMessage()+": "+getRawBody();
+        }
+    }
+
+    /**
+     * Walk the top level members of the body, keeping the status members and skipping
+     * everything else without decoding it.
+     * @throws JSONException if the body is not a JSON object
+     */
+    private void scanStatus() throws JSONException {
+        JsonScanner scanner = new JsonScanner(mRawBytes);
+
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            int name = scanner.skipName();
+
+            if (scanner.nameEquals(name, MESSAGE)) {
+                mStatusMessage = scanner.nextText();
+            } else if (scanner.nameEquals(name, ERROR_MESSAGE)) {
+                mStatusError = scanner.nextText();
+            } else if (scanner.nameEquals(name, DETAILS)) {
+                mErrorDetails = scanner.nextText();
+            } else {
+                scanner.skipValue();
+            }
+        }
+        scanner.endObject();
+    }
+
+    /**
+     * Resolve the human readable status message of a response which is expected to carry one,
+     * as the event, push and message responses are. A successful response without a message
+     * is marked as failed.
+     * @return The "message" member of a successful response, the "error_message" member of a
+     * failed one, or null
+     */
+    protected String resolveMessage() {
+        if (isSuccess()) {
+            if (mStatusMessage != null) {
+                return mStatusMessage;
+            }
+
+            //not good at all
+            mIsSuccess = false;
             mErrorCode = "UNKNOWN";
-            mErrorDetails = e.getMessage()+": "+response;
+            mErrorDetails = "Unknown response: "+getRawBody();
+            return null;
         }
+
+        return mStatusError;
     }
 
     /**
@@ -78,6 +163,10 @@ public class GambitResponse {
      * @return The raw HTTP response body as read from the input stream
      */
     public String getRawBody() {
+        if (mRawBody == null && mRawBytes != null) {
+            mRawBody = new String(mRawBytes, Methods.UTF_8);
+        }
+
         return mRawBody;
     }
 
@@ -98,10 +187,19 @@ public class GambitResponse {
     }
 
     /**
-     * Returns the raw JSONObject parsed from the raw HTTP response body
-     * @return JSONObject based on the original raw HTTP response body
+     * Returns the raw JSONObject parsed from the raw HTTP response body. The body is parsed
+     * on the first call.
+     * @return JSONObject based on the original raw HTTP response body, or null if it is not a JSON object
      */
     public JSONObject getObject() {
+        if (mJson == null && mIsObject) {
+            try {
+                mJson = new JSONObject(getRawBody());
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
         return mJson;
     }
     
@@ -9,15 +9,23 @@ import com.koushikdutta.async.http.AsyncHttpRequest;
 import com.koushikdutta.async.http.Headers;
 import com.koushikdutta.async.http.WebSocket;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import io.cogswell.sdk.json.Json;
 import io.cogswell.sdk.json.JsonNode;
+import io.cogswell.sdk.request.GambitEventBatcher;
 import io.cogswell.sdk.request.GambitRequestEvent;
+import io.cogswell.sdk.subscription.AckAggregator;
 import io.cogswell.sdk.subscription.Callback;
 import io.cogswell.sdk.subscription.CogsMessage;
 import io.cogswell.sdk.subscription.CogsSubscription;
 import io.cogswell.sdk.subscription.CogsSubscriptionHandler;
+import io.cogswell.sdk.subscription.CogsSubscriptionMultiplexer;
 import io.cogswell.sdk.subscription.CogsSubscriptionRequest;
 import io.cogswell.sdk.subscription.CogsSubscriptionWebSocket;
+import io.cogswell.sdk.subscription.MessageDeduplicator;
+import io.cogswell.sdk.subscription.MessageDispatcher;
+import io.cogswell.sdk.subscription.ResumeMarkerStore;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,6 +33,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 
@@ -34,20 +43,319 @@ public class GambitSDKService {
      */
     protected static GambitSDKService mInstance;
 
+    /**
+     * Transport configuration to be used when the singleton is created
+     */
+    protected static GambitTransport.Builder mTransportBuilder = GambitTransport.builder();
+
+    /**
+     * Executor configuration to be used when the singleton is created
+     */
+    protected static GambitExecutor.Builder mExecutorBuilder = GambitExecutor.builder();
+
+    /**
+     * Batching configuration to be used when the singleton is created
+     */
+    protected static GambitEventBatcher.Builder mEventBatcherBuilder = GambitEventBatcher.builder();
+
+    /**
+     * Whether subscriptions created by the singleton share WebSockets
+     */
+    protected static boolean mMultiplexSubscriptions = false;
+
+    /**
+     * Acknowledgement batching configuration for subscription WebSockets
+     */
+    protected static AckAggregator.Builder mAckBuilder = AckAggregator.builder();
+
+    /**
+     * Reconnect timing for WebSockets
+     */
+    protected static ReconnectPolicy.Builder mReconnectBuilder = ReconnectPolicy.builder();
+
+    /**
+     * Message dispatch configuration for subscription WebSockets
+     */
+    protected static MessageDispatcher.Builder mDispatchBuilder = MessageDispatcher.builder();
+
+    /**
+     * Duplicate suppression configuration for subscription WebSockets, or null if disabled
+     */
+    protected static MessageDeduplicator.Builder mDedupBuilder = null;
+
+    /**
+     * Ping configuration for WebSockets, or null if disabled
+     */
+    protected static HeartbeatMonitor.Builder mHeartbeatBuilder = HeartbeatMonitor.builder();
+
+    /**
+     * Where subscriptions keep the id of their last processed message, or null if disabled
+     */
+    protected static ResumeMarkerStore mResumeMarkerStore = null;
+
+    /**
+     * Message compression offered on WebSockets, or null if disabled
+     */
+    protected static FrameCompression.Builder mCompressionBuilder = null;
+
     /**
      * Thread loop
      */
-    protected final ExecutorService mExecutor;
+    protected final GambitExecutor mExecutor;
     protected final ScheduledExecutorService mScheduler;
 
+    /**
+     * Runs subscription message handlers. It is unbounded, so a drain task is never
+     * discarded; each subscription has at most one drain task at a time.
+     */
+    protected final GambitExecutor mDispatchExecutor;
+
+    /**
+     * Shared HTTP transport used by every {@link GambitRequest}
+     */
+    protected final GambitTransport mTransport;
+
+    /**
+     * Batching sender used by {@link #sendGambitEventBatched(GambitRequestEvent.Builder)}
+     */
+    protected final GambitEventBatcher mEventBatcher;
+
+    /**
+     * Connectivity state, as reported by the application
+     */
+    protected final ConnectivityMonitor mConnectivity = new ConnectivityMonitor();
+
+    /**
+     * Pings every WebSocket from one shared timer, or null if disabled
+     */
+    protected final HeartbeatMonitor mHeartbeats;
+
+    /**
+     * Message compression shared by every WebSocket, or null if disabled
+     */
+    protected final FrameCompression mCompression;
+
     protected ConcurrentHashMap<CogsSubscription, CogsSubscriptionWebSocket> subscriptions = new ConcurrentHashMap<>();
 
+    /**
+     * Whether {@link #subscribe(CogsSubscriptionRequest, CogsSubscriptionHandler)} multiplexes subscriptions
+     */
+    protected final boolean mMultiplexing;
+
+    /**
+     * Shared subscription WebSockets, by credentials, when multiplexing
+     */
+    protected final ConcurrentHashMap<String, CogsSubscriptionMultiplexer> multiplexers = new ConcurrentHashMap<>();
+
+    /**
+     * The shared WebSocket carrying each subscription, when multiplexing
+     */
+    protected final ConcurrentHashMap<CogsSubscription, CogsSubscriptionMultiplexer> multiplexedSubscriptions = new ConcurrentHashMap<>();
+
     /**
      * Singleton constructor
      */
     protected GambitSDKService() throws RuntimeException {
-        mExecutor = Executors.newCachedThreadPool();
+        mExecutor = mExecutorBuilder.build();
         mScheduler = Executors.newScheduledThreadPool(2);
+        mDispatchExecutor = GambitExecutor.builder().build();
+        mTransport = mTransportBuilder.build();
+        mEventBatcher = mEventBatcherBuilder.build();
+        mMultiplexing = mMultiplexSubscriptions;
+        mHeartbeats = mHeartbeatBuilder == null ? null : mHeartbeatBuilder.build(mScheduler);
+        mCompression = mCompressionBuilder == null ? null : mCompressionBuilder.build();
+    }
+
+    /**
+     * Configures the shared HTTP transport. This must be called before the first call
+     * to {@link #getInstance()}, since the transport is created along with the singleton.
+     *
+     * @param builder the {@link GambitTransport.Builder builder} describing the transport
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setTransport(GambitTransport.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("The transport must be configured before getInstance() is called.");
+        }
+
+        mTransportBuilder = builder;
+    }
+
+    /**
+     * Configures the executor used to run requests. By default the executor grows without
+     * bound; use {@link GambitExecutor.Builder#withBounds(int, int)} to cap the worker count and
+     * queue depth. This must be called before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link GambitExecutor.Builder builder} describing the executor
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setExecutor(GambitExecutor.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("The executor must be configured before getInstance() is called.");
+        }
+
+        mExecutorBuilder = builder;
+    }
+
+    /**
+     * Configures event batching. This must be called before the first call
+     * to {@link #getInstance()}, since the batcher is created along with the singleton.
+     *
+     * @param builder the {@link GambitEventBatcher.Builder builder} describing the batching parameters
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setEventBatching(GambitEventBatcher.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Event batching must be configured before getInstance() is called.");
+        }
+
+        mEventBatcherBuilder = builder;
+    }
+
+    /**
+     * Selects whether subscriptions share WebSockets. When enabled, all subscriptions made with
+     * the same credentials are carried over a single {@link CogsSubscriptionMultiplexer multiplexed}
+     * WebSocket instead of one WebSocket each. This must be called before the first call to
+     * {@link #getInstance()}.
+     *
+     * The push route does not yet implement the multiplexing protocol (subscribe frames
+     * carrying json_base64, and messages tagged with a sub_id), so this is not public until it
+     * does.
+     *
+     * @param enabled <tt>true</tt> to multiplex subscriptions
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    static synchronized void setSubscriptionMultiplexing(boolean enabled) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Subscription multiplexing must be configured before getInstance() is called.");
+        }
+
+        mMultiplexSubscriptions = enabled;
+    }
+
+    /**
+     * Configures how subscription WebSockets acknowledge messages. By default each message is
+     * acknowledged in its own frame as soon as its handler returns. This must be called before
+     * the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link AckAggregator.Builder builder} describing the batching parameters
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setAckBatching(AckAggregator.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Acknowledgement batching must be configured before getInstance() is called.");
+        }
+
+        mAckBuilder = builder;
+    }
+
+    /**
+     * Configures when dropped WebSockets are re-established. By default the delay between
+     * attempts follows decorrelated jitter from one second up to one minute. This must be called
+     * before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link ReconnectPolicy.Builder builder} describing the policy
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setReconnectPolicy(ReconnectPolicy.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Reconnect policy must be configured before getInstance() is called.");
+        }
+
+        mReconnectBuilder = builder;
+    }
+
+    /**
+     * Configures how subscription messages are handed to their handlers. By default each
+     * subscription buffers up to 256 messages, and discards the oldest while the buffer is
+     * full; see {@link MessageDispatcher} for when discarded messages are redelivered. This
+     * must be called before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link MessageDispatcher.Builder builder} describing the buffering
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setMessageDispatch(MessageDispatcher.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Message dispatch must be configured before getInstance() is called.");
+        }
+
+        mDispatchBuilder = builder;
+    }
+
+    /**
+     * Enables suppression of redelivered subscription messages, by message id. It is disabled
+     * by default. This must be called before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link MessageDeduplicator.Builder builder} describing the window and memory bound, or null to disable
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setMessageDeduplication(MessageDeduplicator.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Message deduplication must be configured before getInstance() is called.");
+        }
+
+        mDedupBuilder = builder;
+    }
+
+    /**
+     * Configures how WebSockets are pinged to detect dead connections. By default each one is
+     * pinged every 30 seconds, and closed and reconnected if its pong takes more than 10. This
+     * must be called before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link HeartbeatMonitor.Builder builder} describing the ping interval and pong deadline, or null to disable
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setHeartbeat(HeartbeatMonitor.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("The heartbeat must be configured before getInstance() is called.");
+        }
+
+        mHeartbeatBuilder = builder;
+    }
+
+    /**
+     * Enables resuming subscriptions after the last message their handlers processed, which is
+     * sent on every reconnect so the push service can resume after it. It is disabled by
+     * default. A {@link io.cogswell.sdk.subscription.MemoryResumeMarkerStore} covers reconnects;
+     * a {@link io.cogswell.sdk.subscription.FileResumeMarkerStore} also covers restarts of the
+     * application. This must be called before the first call to {@link #getInstance()}.
+     *
+     * @param store the {@link ResumeMarkerStore store}, or null to disable resuming
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setResumeMarkerStore(ResumeMarkerStore store) {
+        if (mInstance != null) {
+            throw new IllegalStateException("The resume marker store must be configured before getInstance() is called.");
+        }
+
+        mResumeMarkerStore = store;
+    }
+
+    /**
+     * Enables deflate compression of WebSocket messages. It is offered on every connect, and
+     * used only if the server accepts it. It is disabled by default. This must be called
+     * before the first call to {@link #getInstance()}.
+     *
+     * @param builder the {@link FrameCompression.Builder builder} describing context takeover and level, or null to disable
+     *
+     * @throws IllegalStateException if the singleton has already been created
+     */
+    public static synchronized void setFrameCompression(FrameCompression.Builder builder) {
+        if (mInstance != null) {
+            throw new IllegalStateException("Frame compression must be configured before getInstance() is called.");
+        }
+
+        mCompressionBuilder = builder;
     }
 
     /**
@@ -55,7 +363,7 @@ public class GambitSDKService {
      * otherwise returns the existing {@link GambitSDKService} instance.
      * @return GambitSDKService
      */
-    public static GambitSDKService getInstance() throws RuntimeException {
+    public static synchronized GambitSDKService getInstance() throws RuntimeException {
         if (mInstance == null) {
             mInstance = new GambitSDKService();
         }
@@ -81,6 +389,84 @@ public class GambitSDKService {
         return mScheduler;
     }
 
+    /**
+     * Number of tasks waiting for an executor worker.
+     *
+     * @return the executor queue depth
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueueDepth();
+    }
+
+    /**
+     * Number of submissions which found the executor queue full.
+     *
+     * @return the executor rejection count
+     */
+    public long getRejectedCount() {
+        return mExecutor.getRejectedCount();
+    }
+
+    /**
+     * Creates the acknowledgement aggregator for a subscription WebSocket.
+     *
+     * @param sink the {@link AckAggregator.Sink sink} which sends frames on the WebSocket
+     *
+     * @return the {@link AckAggregator aggregator}
+     */
+    public AckAggregator newAckAggregator(AckAggregator.Sink sink) {
+        return mAckBuilder.build(sink);
+    }
+
+    /**
+     * Creates the message dispatcher for a subscription. Its handler runs on the dispatch
+     * executor, in message order.
+     *
+     * @param receiver the {@link MessageDispatcher.Receiver receiver} which passes messages to the handler
+     *
+     * @return the {@link MessageDispatcher dispatcher}
+     */
+    public MessageDispatcher newMessageDispatcher(MessageDispatcher.Receiver receiver) {
+        return mDispatchBuilder.build(mDispatchExecutor, receiver);
+    }
+
+    /**
+     * Creates the duplicate suppression stage for a subscription WebSocket.
+     *
+     * @return the {@link MessageDeduplicator deduplicator}, or null if deduplication is disabled
+     */
+    public MessageDeduplicator newMessageDeduplicator() {
+        return mDedupBuilder == null ? null : mDedupBuilder.build();
+    }
+
+    /**
+     * Supplies the store of subscription resume markers.
+     *
+     * @return the {@link ResumeMarkerStore store}, or null if resuming is disabled
+     */
+    public ResumeMarkerStore getResumeMarkerStore() {
+        return mResumeMarkerStore;
+    }
+
+    /**
+     * Creates the reconnect policy for a WebSocket. Attempts are held back while the
+     * {@link #getConnectivityMonitor() connectivity monitor} reports the device offline.
+     *
+     * @return the {@link ReconnectPolicy policy}
+     */
+    public ReconnectPolicy newReconnectPolicy() {
+        return mReconnectBuilder.build(mConnectivity);
+    }
+
+    /**
+     * Supplies the shared HTTP transport.
+     *
+     * @return the {@link GambitTransport transport}
+     */
+    public GambitTransport getTransport() {
+        return mTransport;
+    }
+
     /**
      * Executes an operation in the executor.
      *
@@ -101,6 +487,59 @@ public class GambitSDKService {
         getSchedulerService().schedule(runnable, delay, unit);
     }
 
+    /**
+     * Executes an operation in the scheduler repeatedly, with a fixed period between the start
+     * of each run. The first run happens after one period.
+     *
+     * @param period the period between runs
+     * @param unit the {@link TimeUnit units} of the period
+     * @param runnable the {@link Runnable} to execute
+     *
+     * @return a {@link ScheduledFuture} which can be used to cancel further runs
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(long period, TimeUnit unit, Runnable runnable) {
+        return getSchedulerService().scheduleAtFixedRate(runnable, period, period, unit);
+    }
+
+    /**
+     * Starts pinging a newly opened WebSocket.
+     *
+     * @param webSocket the {@link WebSocket}
+     *
+     * @return the {@link HeartbeatMonitor.Heartbeat heartbeat}, which must be cancelled when the WebSocket closes, or null if heartbeats are disabled
+     */
+    public HeartbeatMonitor.Heartbeat watchHeartbeat(WebSocket webSocket) {
+        return mHeartbeats == null ? null : mHeartbeats.watch(webSocket);
+    }
+
+    /**
+     * Supplies the heartbeat monitor, for its round trip time and timeout metrics.
+     *
+     * @return the {@link HeartbeatMonitor}, or null if heartbeats are disabled
+     */
+    public HeartbeatMonitor getHeartbeatMonitor() {
+        return mHeartbeats;
+    }
+
+    /**
+     * Supplies the message compression, for its byte savings and timings.
+     *
+     * @return the {@link FrameCompression compression}, or null if compression is disabled
+     */
+    public FrameCompression getFrameCompression() {
+        return mCompression;
+    }
+
+    /**
+     * Supplies the connectivity monitor. The application should report connectivity changes
+     * to it so that the SDK can hold off network work while the device is offline.
+     *
+     * @return the {@link ConnectivityMonitor}
+     */
+    public ConnectivityMonitor getConnectivityMonitor() {
+        return mConnectivity;
+    }
+
     /**
      * Send Gambit Event data
      * @param builder Builder that configures the {@link GambitRequest} inheriting object
@@ -111,6 +550,36 @@ public class GambitSDKService {
         return mExecutor.submit(builder.build());
     }
 
+    /**
+     * Send Gambit Event data without occupying an executor thread while the request is in flight.
+     * @param builder Builder that configures the {@link GambitRequestEvent}
+     * @return Promised object that inherits {@link GambitResponse}
+     * @throws java.lang.Exception if the event fails validation
+     */
+    public ListenableFuture<GambitResponse> sendGambitEventAsync(GambitRequestEvent.Builder builder) throws Exception {
+        return builder.build().enqueue();
+    }
+
+    /**
+     * Send Gambit Event data as part of a batch. Events are collected and sent together,
+     * but each caller receives the response for its own event.
+     * @param builder Builder that configures the {@link GambitRequestEvent}
+     * @return Promised object that inherits {@link GambitResponse}
+     * @throws java.lang.Exception if the event fails validation
+     */
+    public ListenableFuture<GambitResponse> sendGambitEventBatched(GambitRequestEvent.Builder builder) throws Exception {
+        return mEventBatcher.submit(builder.build());
+    }
+
+    /**
+     * Supplies the event batcher.
+     *
+     * @return the {@link GambitEventBatcher batcher}
+     */
+    public GambitEventBatcher getEventBatcher() {
+        return mEventBatcher;
+    }
+
     /**
      * Establish a new WebSocket via the Cogs GET /push route.
      *
@@ -118,16 +587,35 @@ public class GambitSDKService {
      * @param handler the {@link CogsSubscriptionHandler handler} for receiving messages from the WebSocket
      */
     public void subscribe(final CogsSubscriptionRequest request, final CogsSubscriptionHandler handler) {
-        CogsSubscriptionWebSocket oldWebSocket = subscriptions.get(request);
+        if (mMultiplexing) {
+            subscribeMultiplexed(request, handler);
+            return;
+        }
+
+        CogsSubscription subscription = request.getSubscription();
+
+        while (true) {
+            CogsSubscriptionWebSocket oldWebSocket = subscriptions.get(subscription);
+
+            if (oldWebSocket == null) {
+                // Sockets are only connected once they win the slot, so concurrent calls open one.
+                CogsSubscriptionWebSocket webSocket = CogsSubscriptionWebSocket.create(request, handler);
+                oldWebSocket = subscriptions.putIfAbsent(subscription, webSocket);
+
+                if (oldWebSocket == null) {
+                    Log.i("Cogs-SDK", "Creating new WebSocket.");
+                    webSocket.start();
+                    return;
+                }
+            }
 
-        if (oldWebSocket != null) {
             Log.i("Cogs-SDK", "Replacing handler for existing WebSocket.");
-            oldWebSocket.replaceHandler(handler);
-        } else {
-            Log.i("Cogs-SDK", "Creating new WebSocket.");
-            CogsSubscriptionWebSocket webSocket = CogsSubscriptionWebSocket.create(request, handler);
-            subscriptions.put(request.getSubscription(), webSocket);
-            webSocket.start();
+            if (oldWebSocket.replaceHandler(handler)) {
+                return;
+            }
+
+            // A concurrent unsubscribe is stopping that socket; replace it with a new one.
+            subscriptions.remove(subscription, oldWebSocket);
         }
     }
 
@@ -138,16 +626,64 @@ public class GambitSDKService {
      * @param callback the {@link Callback} to invoke once the subscription is terminated.
      */
     public void unsubscribe(final CogsSubscription subscription, final Callback<Boolean> callback) {
+        if (mMultiplexing) {
+            unsubscribeMultiplexed(subscription, callback);
+            return;
+        }
+
         CogsSubscriptionWebSocket ws = subscriptions.remove(subscription);
+
+        if (ws == null) {
+            callback.call(false);
+            return;
+        }
+
         ws.stop(callback);
     }
 
+    private void subscribeMultiplexed(CogsSubscriptionRequest request, CogsSubscriptionHandler handler) {
+        String key = CogsSubscriptionMultiplexer.credentialsKey(request);
+
+        synchronized (multiplexers) {
+            CogsSubscriptionMultiplexer multiplexer = multiplexers.get(key);
+
+            if (multiplexer == null) {
+                Log.i("Cogs-SDK", "Creating new multiplexed WebSocket.");
+                multiplexer = CogsSubscriptionMultiplexer.create(request);
+                multiplexers.put(key, multiplexer);
+            }
+
+            multiplexedSubscriptions.put(request.getSubscription(), multiplexer);
+            multiplexer.add(request, handler);
+        }
+    }
+
+    private void unsubscribeMultiplexed(CogsSubscription subscription, Callback<Boolean> callback) {
+        CogsSubscriptionMultiplexer multiplexer;
+
+        synchronized (multiplexers) {
+            multiplexer = multiplexedSubscriptions.remove(subscription);
+
+            if (multiplexer != null) {
+                multiplexer.remove(subscription, callback);
+
+                if (multiplexer.isEmpty()) {
+                    multiplexers.values().remove(multiplexer);
+                }
+            }
+        }
+
+        if (multiplexer == null) {
+            callback.call(false);
+        }
+    }
+
     /**
      * Get a set containing all established subscriptions.
      *
      * @return the {@link Set} of subscriptions
      */
     public Set<CogsSubscription> getSubscriptions() {
-        return subscriptions.keySet();
+        return mMultiplexing ? multiplexedSubscriptions.keySet() : subscriptions.keySet();
     }
 }
@@ -0,0 +1,277 @@
+package io.cogswell.sdk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * The process-wide HTTP transport shared by every {@link GambitRequest}.
+ *
+ * A single {@link OkHttpClient} owns the connection pool, the dispatcher and the TLS
+ * session cache, so consecutive requests to the API reuse pooled (and, where the server
+ * supports it, HTTP/2 multiplexed) connections instead of paying a fresh TCP and TLS
+ * handshake each time.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class GambitTransport {
+    private final OkHttpClient client;
+    private final ConnectionPool connectionPool;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+
+    // Connections which have already carried at least one request. Weak keys let evicted
+    // connections be collected with the pool.
+    private final Set<Connection> seenConnections =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>()));
+
+    private GambitTransport(Builder builder) {
+        connectionPool = new ConnectionPool(builder.maxIdleConnections, builder.keepAliveMillis, TimeUnit.MILLISECONDS);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(builder.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(builder.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(builder.writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .addNetworkInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        recordConnection(chain.connection());
+                        return chain.proceed(chain.request());
+                    }
+                });
+
+        if (builder.http2) {
+            clientBuilder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            clientBuilder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+
+        client = clientBuilder.build();
+    }
+
+    private void recordConnection(Connection connection) {
+        requestCount.incrementAndGet();
+
+        if (connection != null && !seenConnections.add(connection)) {
+            reusedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Supplies the shared HTTP client. All requests should be issued through this client
+     * so that they share its connection pool.
+     *
+     * @return the shared {@link OkHttpClient}
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Takes a snapshot of the connection pool statistics.
+     *
+     * @return the current {@link Stats}
+     */
+    public Stats getStats() {
+        int total = connectionPool.connectionCount();
+        int idle = connectionPool.idleConnectionCount();
+
+        return new Stats(idle, total - idle, requestCount.get(), reusedCount.get());
+    }
+
+    /**
+     * Closes all idle pooled connections.
+     */
+    public void evictAll() {
+        connectionPool.evictAll();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A point-in-time view of the transport's connection pool.
+     */
+    public static class Stats {
+        private final int idleConnections;
+        private final int activeConnections;
+        private final long requests;
+        private final long reusedRequests;
+
+        Stats(int idleConnections, int activeConnections, long requests, long reusedRequests) {
+            this.idleConnections = idleConnections;
+            this.activeConnections = activeConnections;
+            this.requests = requests;
+            this.reusedRequests = reusedRequests;
+        }
+
+        /**
+         * @return the number of pooled connections which are currently idle
+         */
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        /**
+         * @return the number of pooled connections which are currently carrying a request
+         */
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        /**
+         * @return the number of requests which reached the network
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests which were sent over an already established connection
+         */
+        public long getReusedRequests() {
+            return reusedRequests;
+        }
+
+        /**
+         * @return the fraction (0.0 - 1.0) of requests which did not require a new connection
+         */
+        public double getReuseRatio() {
+            return requests == 0 ? 0.0 : (double) reusedRequests / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "idle=" + idleConnections + " active=" + activeConnections +
+                    " requests=" + requests + " reused=" + reusedRequests;
+        }
+    }
+
+    public static class Builder {
+        private int maxIdleConnections = 5;
+        private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+        private long connectTimeoutMillis = 10000;
+        private long readTimeoutMillis = 10000;
+        private long writeTimeoutMillis = 10000;
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private boolean http2 = true;
+
+        private Builder() {}
+
+        /**
+         * @param maxIdleConnections the maximum number of idle connections to keep in the pool
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * @param keepAlive how long an idle connection is kept in the pool
+         * @param unit the {@link TimeUnit units} of the keep-alive
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withKeepAlive(long keepAlive, TimeUnit unit) {
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * @param timeout the connect timeout
+         * @param unit the {@link TimeUnit units} of the timeout
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withConnectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param timeout the socket read timeout
+         * @param unit the {@link TimeUnit units} of the timeout
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withReadTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param timeout the socket write timeout
+         * @param unit the {@link TimeUnit units} of the timeout
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withWriteTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param maxRequests the maximum number of requests in flight across all hosts
+         * @param maxRequestsPerHost the maximum number of requests in flight to a single host
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxRequests(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param http2 whether HTTP/2 should be offered during ALPN negotiation (enabled by default)
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withHttp2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * Build the {@link GambitTransport transport}, validating the configuration.
+         *
+         * @return the new {@link GambitTransport transport}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public GambitTransport build() {
+            if (maxIdleConnections < 0)
+                throw new CogsBuilderException("Max idle connections must not be negative.");
+            if (keepAliveMillis <= 0)
+                throw new CogsBuilderException("Keep-alive must be positive.");
+            if (maxRequests < 1 || maxRequestsPerHost < 1)
+                throw new CogsBuilderException("Max requests must be positive.");
+
+            return new GambitTransport(this);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package io.cogswell.sdk;
+
+import android.util.Log;
+
+import com.koushikdutta.async.http.WebSocket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Detects dead WebSockets by pinging them.
+ *
+ * Every watched WebSocket is pinged once per ping interval. If its pong does not arrive within
+ * the pong deadline, the connection is assumed to be half-open (typically after a NAT
+ * mapping expired) and the WebSocket is closed, which sends it down its owner's usual
+ * reconnect path. The round trip time of each pong is recorded.
+ *
+ * A single task on the SDK scheduler serves every watched WebSocket. It runs only while at
+ * least one WebSocket is watched.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class HeartbeatMonitor {
+
+    /**
+     * The heartbeat of one WebSocket connection.
+     */
+    public class Heartbeat implements WebSocket.PongCallback {
+        private final WebSocket webSocket;
+
+        private long sequence = 0;
+        private long pingSentAt = -1;
+        private long lastPingAt;
+        private long lastRttNanos = -1;
+
+        private Heartbeat(WebSocket webSocket) {
+            this.webSocket = webSocket;
+            this.lastPingAt = System.nanoTime();
+        }
+
+        @Override
+        public void onPongReceived(String payload) {
+            long now = System.nanoTime();
+            long rtt;
+
+            synchronized (this) {
+                if (pingSentAt < 0 || !Long.toString(sequence).equals(payload)) {
+                    return;
+                }
+
+                rtt = now - pingSentAt;
+                lastRttNanos = rtt;
+                pingSentAt = -1;
+            }
+
+            pongCount.incrementAndGet();
+            totalRttNanos.addAndGet(rtt);
+            raise(maxRttNanos, rtt);
+        }
+
+        /**
+         * @return the round trip time, in microseconds, of the latest pong, or -1 if none has arrived
+         */
+        public synchronized long getLastRttMicros() {
+            return lastRttNanos < 0 ? -1 : lastRttNanos / 1000;
+        }
+
+        /**
+         * Stop watching the WebSocket. Called once it has closed.
+         */
+        public void cancel() {
+            unwatch(this);
+        }
+
+        /**
+         * @return <tt>true</tt> if the WebSocket should be closed
+         */
+        private boolean tick(long now) {
+            String payload;
+
+            synchronized (this) {
+                if (pingSentAt >= 0) {
+                    return now - pingSentAt > pongTimeoutNanos;
+                }
+
+                if (now - lastPingAt < pingIntervalNanos) {
+                    return false;
+                }
+
+                sequence++;
+                pingSentAt = now;
+                lastPingAt = now;
+                payload = Long.toString(sequence);
+            }
+
+            try {
+                webSocket.ping(payload);
+            } catch (Throwable error) {
+                Log.e("Cogs-SDK", "Error sending WebSocket ping.", error);
+            }
+
+            return false;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final long pingIntervalNanos;
+    private final long pongTimeoutNanos;
+    private final long tickMillis;
+
+    private final ConcurrentHashMap<Heartbeat, Boolean> heartbeats = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> task;
+
+    private final AtomicLong pongCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalRttNanos = new AtomicLong();
+    private final AtomicLong maxRttNanos = new AtomicLong();
+
+    private final Runnable ticker = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+
+            for (Heartbeat heartbeat : heartbeats.keySet()) {
+                if (heartbeat.tick(now)) {
+                    Log.w("Cogs-SDK", "WebSocket missed its pong deadline; closing it.");
+
+                    timeoutCount.incrementAndGet();
+                    unwatch(heartbeat);
+
+                    try {
+                        heartbeat.webSocket.close();
+                    } catch (Throwable error) {
+                        Log.e("Cogs-SDK", "Error closing unresponsive WebSocket.", error);
+                    }
+                }
+            }
+        }
+    };
+
+    private HeartbeatMonitor(Builder builder, ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.pingIntervalMillis);
+        this.pongTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.pongTimeoutMillis);
+        // Fine enough to notice a missed deadline promptly, without waking up needlessly.
+        this.tickMillis = Math.max(100, Math.min(builder.pingIntervalMillis, builder.pongTimeoutMillis) / 2);
+    }
+
+    /**
+     * Start watching a newly opened WebSocket. This replaces its pong callback.
+     *
+     * @param webSocket the {@link WebSocket}
+     *
+     * @return the {@link Heartbeat}, which must be cancelled when the WebSocket closes
+     */
+    public Heartbeat watch(WebSocket webSocket) {
+        Heartbeat heartbeat = new Heartbeat(webSocket);
+        webSocket.setPongCallback(heartbeat);
+
+        synchronized (this) {
+            heartbeats.put(heartbeat, Boolean.TRUE);
+
+            if (task == null) {
+                task = scheduler.scheduleAtFixedRate(ticker, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return heartbeat;
+    }
+
+    private synchronized void unwatch(Heartbeat heartbeat) {
+        heartbeats.remove(heartbeat);
+
+        if (heartbeats.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * @return the number of WebSockets being watched
+     */
+    public int size() {
+        return heartbeats.size();
+    }
+
+    /**
+     * @return the number of pongs received
+     */
+    public long getPongCount() {
+        return pongCount.get();
+    }
+
+    /**
+     * @return the number of WebSockets closed for missing their pong deadline
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return the mean round trip time, in microseconds, of the pongs received
+     */
+    public long getAverageRttMicros() {
+        long pongs = pongCount.get();
+        return pongs == 0 ? 0 : totalRttNanos.get() / pongs / 1000;
+    }
+
+    /**
+     * @return the longest round trip time, in microseconds, of the pongs received
+     */
+    public long getMaxRttMicros() {
+        return maxRttNanos.get() / 1000;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long pingIntervalMillis = 30000;
+        private long pongTimeoutMillis = 10000;
+
+        private Builder() {}
+
+        /**
+         * @param interval the time between pings on each WebSocket
+         * @param unit the {@link TimeUnit units} of the interval
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withPingInterval(long interval, TimeUnit unit) {
+            this.pingIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * @param timeout how long after a ping its pong must arrive
+         * @param unit the {@link TimeUnit units} of the timeout
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withPongTimeout(long timeout, TimeUnit unit) {
+            this.pongTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Build a monitor.
+         *
+         * @param scheduler the {@link ScheduledExecutorService scheduler} which runs the shared timer
+         *
+         * @return the {@link HeartbeatMonitor monitor}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public HeartbeatMonitor build(ScheduledExecutorService scheduler) throws CogsBuilderException {
+            if (scheduler == null)
+                throw new CogsBuilderException("Scheduler must not be null.");
+            if (pingIntervalMillis < 1)
+                throw new CogsBuilderException("Ping interval must be positive.");
+            if (pongTimeoutMillis < 1)
+                throw new CogsBuilderException("Pong timeout must be positive.");
+
+            return new HeartbeatMonitor(this, scheduler);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.cogswell.sdk;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes HMAC-SHA256 signatures for a single key.
+ *
+ * The key is decoded and a {@link Mac} initialised once. Each thread signs with its own
+ * clone of that prototype, so signing is just reset, update and doFinal.
+ *
+ * Acquire instances through {@link Methods#getSigner(String)}, which caches them by key.
+ */
+public class HmacSigner {
+    static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec keySpec;
+    private final Mac prototype;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            return newMac();
+        }
+    };
+
+    HmacSigner(byte[] key) throws NoSuchAlgorithmException, InvalidKeyException {
+        keySpec = new SecretKeySpec(key, ALGORITHM);
+        prototype = Mac.getInstance(ALGORITHM);
+        prototype.init(keySpec);
+    }
+
+    private Mac newMac() {
+        synchronized (prototype) {
+            try {
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                // Some providers can't clone; fall back to a fresh instance.
+            }
+        }
+
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(keySpec);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            // The prototype was initialised with the same algorithm and key.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Supplies this thread's {@link Mac}, reset and ready for use. The caller must finish with
+     * it (doFinal) before signing anything else with this signer on the same thread.
+     *
+     * @return the thread's {@link Mac}
+     */
+    public Mac mac() {
+        Mac mac = macs.get();
+        mac.reset();
+        return mac;
+    }
+
+    /**
+     * Sign a range of bytes.
+     *
+     * @param content the content to be signed
+     * @param offset the offset of the first byte to sign
+     * @param length the number of bytes to sign
+     *
+     * @return the raw 32 byte HMAC-SHA256
+     */
+    public byte[] sign(byte[] content, int offset, int length) {
+        Mac mac = mac();
+        mac.update(content, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Sign the remaining bytes of a buffer. The buffer's position is advanced to its limit.
+     *
+     * @param content the content to be signed
+     *
+     * @return the raw 32 byte HMAC-SHA256
+     */
+    public byte[] sign(ByteBuffer content) {
+        Mac mac = mac();
+        mac.update(content);
+        return mac.doFinal();
+    }
+
+    /**
+     * Sign a range of bytes.
+     *
+     * @param content the content to be signed
+     * @param offset the offset of the first byte to sign
+     * @param length the number of bytes to sign
+     *
+     * @return the HMAC-SHA256 as a lower case hex string
+     */
+    public String signHex(byte[] content, int offset, int length) {
+        return new String(Hex.encodeHex(sign(content, offset, length)));
+    }
+}
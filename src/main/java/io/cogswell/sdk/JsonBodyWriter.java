@@ -0,0 +1,342 @@
+package io.cogswell.sdk;
+
+import org.apache.commons.codec.binary.Hex;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.crypto.Mac;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+
+/**
+ * Serializes a JSON request body straight to UTF-8 bytes, signing the bytes as they are
+ * produced.
+ *
+ * Every byte is written once into the writer's buffer and fed to the {@link Mac} once, and
+ * the same buffer is handed to OkHttp by {@link #toRequestBody(MediaType)} without copying.
+ * The buffer belongs to the finished body (OkHttp may replay it on a retry), so it is not
+ * shared between requests.
+ */
+public class JsonBodyWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(Methods.UTF_8);
+    private static final byte[] TRUE = "true".getBytes(Methods.UTF_8);
+    private static final byte[] FALSE = "false".getBytes(Methods.UTF_8);
+    private static final byte[] NULL = "null".getBytes(Methods.UTF_8);
+
+    private final Mac mac;
+
+    private byte[] buffer;
+    private int count = 0;
+    private int signed = 0;
+
+    // One flag per nesting level: whether the next element needs a leading comma.
+    private boolean[] needsComma = new boolean[8];
+    private int depth = 0;
+
+    private String signature;
+
+    /**
+     * @param initialCapacity the expected body size in bytes
+     * @param mac the {@link Mac} to feed, already reset; may be <tt>null</tt> to skip signing
+     */
+    public JsonBodyWriter(int initialCapacity, Mac mac) {
+        this.buffer = new byte[Math.max(initialCapacity, 64)];
+        this.mac = mac;
+    }
+
+    public JsonBodyWriter beginObject() {
+        separate();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonBodyWriter endObject() {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonBodyWriter beginArray() {
+        separate();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonBodyWriter endArray() {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Write an object member name. The next value written is the member's value.
+     *
+     * @param name the member name
+     *
+     * @return this {@link JsonBodyWriter writer}
+     */
+    public JsonBodyWriter name(String name) {
+        separate();
+        writeString(name);
+        writeByte(':');
+        // The value follows the colon directly.
+        needsComma[depth - 1] = false;
+        return this;
+    }
+
+    public JsonBodyWriter value(String value) {
+        separate();
+
+        if (value == null) {
+            writeBytes(NULL);
+        } else {
+            writeString(value);
+        }
+
+        return this;
+    }
+
+    public JsonBodyWriter value(long value) {
+        separate();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonBodyWriter value(boolean value) {
+        separate();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Write any value which org.json would accept, including nested {@link JSONObject}s,
+     * {@link JSONArray}s, {@link Map}s and {@link Collection}s.
+     *
+     * @param value the value
+     *
+     * @return this {@link JsonBodyWriter writer}
+     *
+     * @throws JSONException if a number is not finite
+     */
+    public JsonBodyWriter value(Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            separate();
+            writeBytes(NULL);
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            separate();
+            writeAscii(JSONObject.numberToString((Number) value));
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Iterator<String> keys = object.keys();
+
+            beginObject();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                name(key).value(object.opt(key));
+            }
+            endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            endArray();
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey())).value(entry.getValue());
+            }
+            endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) value) {
+                value(element);
+            }
+            endArray();
+        } else {
+            value(value.toString());
+        }
+
+        return this;
+    }
+
+    /**
+     * Complete the body and the signature. No more values may be written afterwards.
+     *
+     * @return the hex encoded HMAC-SHA256 of the body, or <tt>null</tt> if no {@link Mac} was supplied
+     */
+    public String finish() {
+        if (signature == null && mac != null) {
+            sign();
+            signature = new String(Hex.encodeHex(mac.doFinal()));
+        }
+
+        return signature;
+    }
+
+    /**
+     * @return the buffer holding the body; only the first {@link #length()} bytes are valid
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int length() {
+        return count;
+    }
+
+    /**
+     * Wrap the written bytes for OkHttp without copying them.
+     *
+     * @param contentType the content type of the body
+     *
+     * @return the {@link RequestBody}
+     */
+    public RequestBody toRequestBody(MediaType contentType) {
+        return RequestBody.create(contentType, buffer, 0, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, Methods.UTF_8);
+    }
+
+    private void push() {
+        if (depth == needsComma.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(needsComma, 0, grown, 0, depth);
+            needsComma = grown;
+        }
+
+        needsComma[depth++] = false;
+    }
+
+    private void separate() {
+        if (depth > 0) {
+            if (needsComma[depth - 1]) {
+                writeByte(',');
+            }
+            needsComma[depth - 1] = true;
+        }
+    }
+
+    private void sign() {
+        if (mac != null && signed < count) {
+            mac.update(buffer, signed, count - signed);
+            signed = count;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            // Sign what we have while it is still warm, so no byte is ever hashed twice.
+            sign();
+
+            byte[] grown = new byte[Math.max(buffer.length * 2, count + extra)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeAscii(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Quote, escape and UTF-8 encode a string in one pass.
+     */
+    private void writeString(String text) {
+        int length = text.length();
+        // Worst case: every char is a 6 byte escape, plus the quotes.
+        ensureCapacity(length * 6 + 2);
+
+        byte[] out = buffer;
+        int pos = count;
+
+        out[pos++] = '"';
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                out[pos++] = '\\';
+                out[pos++] = (byte) c;
+            } else if (c == '/' && i > 0 && text.charAt(i - 1) == '<') {
+                // Matches org.json, which escapes "</" so the body can be embedded in HTML.
+                out[pos++] = '\\';
+                out[pos++] = '/';
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                switch (c) {
+                    case '\b': out[pos++] = '\\'; out[pos++] = 'b'; break;
+                    case '\t': out[pos++] = '\\'; out[pos++] = 't'; break;
+                    case '\n': out[pos++] = '\\'; out[pos++] = 'n'; break;
+                    case '\f': out[pos++] = '\\'; out[pos++] = 'f'; break;
+                    case '\r': out[pos++] = '\\'; out[pos++] = 'r'; break;
+                    default:
+                        out[pos++] = '\\';
+                        out[pos++] = 'u';
+                        out[pos++] = HEX[(c >> 12) & 0xf];
+                        out[pos++] = HEX[(c >> 8) & 0xf];
+                        out[pos++] = HEX[(c >> 4) & 0xf];
+                        out[pos++] = HEX[c & 0xf];
+                }
+            } else if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xc0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Unpaired surrogate; encode as '?' like String.getBytes() would.
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xe0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        out[pos++] = '"';
+        count = pos;
+    }
+}
@@ -5,20 +5,20 @@ import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Methods {
     public static final Charset UTF_8 = Charset.forName("utf-8");
 
-    private static final String ALGORITHM_HMAC_SHA256 = "HmacSHA256";
+    private static final int MAX_CACHED_SIGNERS = 64;
     private static final ThreadLocal<SimpleDateFormat> formatters = new ThreadLocal<>();
+    private static final ConcurrentHashMap<String, HmacSigner> signers = new ConcurrentHashMap<>();
 
     private static SimpleDateFormat getIsoFormatter() {
         SimpleDateFormat formatter = formatters.get();
@@ -125,37 +125,98 @@ public class Methods {
             return text.substring(0, trimOffset);
     }
 
+    /**
+     * Supplies the cached signer for a key, creating it on first use.
+     *
+     * @param key The hex encoded key used for signing
+     *
+     * @return the {@link HmacSigner} for the key
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException if the key is not valid hex
+     */
+    public static HmacSigner getSigner(String key) throws NoSuchAlgorithmException, InvalidKeyException {
+        HmacSigner signer = signers.get(key);
+
+        if (signer == null) {
+            byte[] keyBytes;
+
+            try {
+                keyBytes = Hex.decodeHex(key.toCharArray());
+            } catch (DecoderException e) {
+                throw new InvalidKeyException("The signing key is not valid hex.", e);
+            }
+
+            // Only a handful of keys are expected; don't let a misbehaving caller grow this forever.
+            if (signers.size() >= MAX_CACHED_SIGNERS) {
+                signers.clear();
+            }
+
+            signer = new HmacSigner(keyBytes);
+            signers.put(key, signer);
+        }
+
+        return signer;
+    }
+
     /**
      * Calculate HMAC-SHA256 hash for a given content and a signing key.
      *
      * @param content The content to be signed
      * @param key The key used for signing
      *
-     * @return HMAC-SHA256 BASE64 Encoded ASCII String
+     * @return HMAC-SHA256 hex encoded ASCII String
      *
      * @throws NoSuchAlgorithmException
      * @throws UnsupportedEncodingException
      * @throws InvalidKeyException
      */
     public static String getHmac(String content, String key) throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidKeyException {
-        Mac sha256_HMAC = Mac.getInstance(ALGORITHM_HMAC_SHA256);
-
-        byte[] key_hex;
-
-        try {
-            key_hex = Hex.decodeHex(key.toCharArray());
-        } catch (DecoderException e) {
-            e.printStackTrace();
-            key_hex = new byte[0];
-        }
-
-        SecretKeySpec keySpec = new SecretKeySpec(key_hex, ALGORITHM_HMAC_SHA256);
+        return getHmac(content.getBytes(UTF_8), key);
+    }
 
-        sha256_HMAC.init(keySpec);
-        byte[] hmac = sha256_HMAC.doFinal(content.getBytes(UTF_8));
+    /**
+     * Calculate HMAC-SHA256 hash for already encoded content and a signing key.
+     *
+     * @param content The UTF-8 encoded content to be signed
+     * @param key The key used for signing
+     *
+     * @return HMAC-SHA256 hex encoded ASCII String
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public static String getHmac(byte[] content, String key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return getSigner(key).signHex(content, 0, content.length);
+    }
 
-        String hmacHex = new String(Hex.encodeHex(hmac));
+    /**
+     * Calculate HMAC-SHA256 hash for the remaining bytes of a buffer and a signing key.
+     *
+     * @param content The UTF-8 encoded content to be signed; its position is advanced to its limit
+     * @param key The key used for signing
+     *
+     * @return HMAC-SHA256 hex encoded ASCII String
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public static String getHmac(ByteBuffer content, String key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return new String(Hex.encodeHex(getSigner(key).sign(content)));
+    }
 
-        return hmacHex;
+    /**
+     * Calculate the raw HMAC-SHA256 hash for already encoded content and a signing key.
+     *
+     * @param content The UTF-8 encoded content to be signed
+     * @param key The key used for signing
+     *
+     * @return the 32 byte HMAC-SHA256
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     */
+    public static byte[] getHmacBytes(byte[] content, String key) throws NoSuchAlgorithmException, InvalidKeyException {
+        return getSigner(key).sign(content, 0, content.length);
     }
 }
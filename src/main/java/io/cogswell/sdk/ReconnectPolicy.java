@@ -0,0 +1,311 @@
+package io.cogswell.sdk;
+
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Decides when a dropped WebSocket should be re-established.
+ *
+ * Each WebSocket owns a policy instance, which tracks its consecutive failed attempts. The
+ * delay before each attempt comes from a pluggable {@link Strategy} and is capped by a ceiling.
+ * The attempt count is reset once a connection has stayed up for the stable uptime, so a
+ * socket which drops after a long healthy period starts again from the shortest delay.
+ *
+ * No attempts are made while the {@link ConnectivityMonitor} reports the device offline; the
+ * pending reconnect is instead run when connectivity returns, after a fresh, randomized delay.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class ReconnectPolicy implements ConnectivityMonitor.Listener {
+
+    /**
+     * Computes the delay before a reconnect attempt.
+     */
+    public interface Strategy {
+        /**
+         * @param attempt the number of attempts made since the last reset, starting at 0
+         * @param previousDelay the delay returned for the previous attempt, or 0 after a reset
+         * @param random the source of randomness for jitter
+         *
+         * @return the delay in milliseconds, before the ceiling is applied
+         */
+        long nextDelay(int attempt, long previousDelay, Random random);
+    }
+
+    /**
+     * The same delay before every attempt. Clients which lost their connections together will
+     * reconnect together.
+     *
+     * @param delay the delay
+     * @param unit the {@link TimeUnit units} of the delay
+     *
+     * @return the {@link Strategy}
+     */
+    public static Strategy fixed(long delay, TimeUnit unit) {
+        final long millis = unit.toMillis(delay);
+
+        return new Strategy() {
+            @Override
+            public long nextDelay(int attempt, long previousDelay, Random random) {
+                return millis;
+            }
+        };
+    }
+
+    /**
+     * A delay which doubles with each attempt, with "full jitter": the actual delay is drawn
+     * uniformly between zero and the doubled value.
+     *
+     * @param base the delay bound for the first attempt
+     * @param unit the {@link TimeUnit units} of the base delay
+     *
+     * @return the {@link Strategy}
+     */
+    public static Strategy exponential(long base, TimeUnit unit) {
+        final long millis = unit.toMillis(base);
+
+        return new Strategy() {
+            @Override
+            public long nextDelay(int attempt, long previousDelay, Random random) {
+                // Stop doubling well before the shift overflows; the ceiling applies anyway.
+                long bound = millis << Math.min(attempt, 30);
+                return (long) (random.nextDouble() * bound);
+            }
+        };
+    }
+
+    /**
+     * "Decorrelated jitter": each delay is drawn uniformly between the base delay and three
+     * times the previous delay (or the base delay, for the first attempt), so clients spread
+     * out quickly and stay spread out.
+     *
+     * @param base the shortest delay
+     * @param unit the {@link TimeUnit units} of the base delay
+     *
+     * @return the {@link Strategy}
+     */
+    public static Strategy decorrelatedJitter(long base, TimeUnit unit) {
+        final long millis = unit.toMillis(base);
+
+        return new Strategy() {
+            @Override
+            public long nextDelay(int attempt, long previousDelay, Random random) {
+                long upper = Math.max(millis, previousDelay) * 3;
+                return millis + (long) (random.nextDouble() * (upper - millis));
+            }
+        };
+    }
+
+    private final Strategy strategy;
+    private final long ceilingMillis;
+    private final long stableNanos;
+    private final ConnectivityMonitor connectivity;
+    private final Random random;
+
+    private int attempt = 0;
+    private long previousDelay = 0;
+    private long connectedAt = -1;
+
+    private Runnable waitingForConnectivity;
+
+    private ReconnectPolicy(Builder builder, ConnectivityMonitor connectivity) {
+        this.strategy = builder.strategy;
+        this.ceilingMillis = builder.ceilingMillis;
+        this.stableNanos = TimeUnit.MILLISECONDS.toNanos(builder.stableMillis);
+        this.connectivity = connectivity;
+        this.random = builder.seed == null ? new Random() : new Random(builder.seed);
+    }
+
+    /**
+     * Compute the delay before the next attempt, and count the attempt.
+     *
+     * @return the delay in milliseconds
+     */
+    public synchronized long nextDelay() {
+        long delay = Math.min(ceilingMillis, Math.max(0, strategy.nextDelay(attempt, previousDelay, random)));
+
+        attempt++;
+        previousDelay = delay;
+
+        return delay;
+    }
+
+    /**
+     * Record that a connection has been established.
+     */
+    public synchronized void connected() {
+        connectedAt = System.nanoTime();
+    }
+
+    /**
+     * Record that the connection has been lost. If it had been up for the stable uptime, the
+     * attempt count is reset.
+     */
+    public synchronized void disconnected() {
+        if (connectedAt >= 0 && System.nanoTime() - connectedAt >= stableNanos) {
+            reset();
+        }
+        connectedAt = -1;
+    }
+
+    /**
+     * Forget all previous attempts.
+     */
+    public synchronized void reset() {
+        attempt = 0;
+        previousDelay = 0;
+    }
+
+    /**
+     * @return the number of attempts made since the last reset
+     */
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Schedule a reconnect. If the device is offline, the reconnect waits for connectivity to
+     * return instead of being attempted.
+     *
+     * @param reconnect the {@link Runnable} which re-establishes the connection
+     */
+    public void schedule(Runnable reconnect) {
+        boolean offline;
+
+        synchronized (this) {
+            offline = !connectivity.isConnected();
+
+            if (offline) {
+                Log.i("Cogs-SDK", "Offline; reconnecting once connectivity returns.");
+
+                waitingForConnectivity = reconnect;
+                connectivity.addListener(this);
+            }
+        }
+
+        if (offline) {
+            // Connectivity may have returned before the listener was registered.
+            if (connectivity.isConnected()) {
+                connectivityChanged(true);
+            }
+            return;
+        }
+
+        long delay = nextDelay();
+        Log.i("Cogs-SDK", "Reconnecting in " + delay + " ms.");
+
+        GambitSDKService.getInstance().schedule(delay, TimeUnit.MILLISECONDS, reconnect);
+    }
+
+    /**
+     * Abandon a reconnect which is waiting for connectivity.
+     */
+    public void cancel() {
+        synchronized (this) {
+            waitingForConnectivity = null;
+        }
+        connectivity.removeListener(this);
+    }
+
+    @Override
+    public void connectivityChanged(boolean connected) {
+        Runnable reconnect;
+
+        synchronized (this) {
+            if (!connected || waitingForConnectivity == null) {
+                return;
+            }
+
+            reconnect = waitingForConnectivity;
+            waitingForConnectivity = null;
+
+            // The outage, not the server, was the problem; start over from the shortest delay.
+            reset();
+        }
+
+        connectivity.removeListener(this);
+        schedule(reconnect);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Strategy strategy = decorrelatedJitter(1, TimeUnit.SECONDS);
+        private long ceilingMillis = 60000;
+        private long stableMillis = 30000;
+        private Long seed;
+
+        private Builder() {}
+
+        /**
+         * @param strategy the {@link Strategy} computing each delay; decorrelated jitter from
+         *                 one second by default
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withStrategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * @param ceiling the longest delay between attempts
+         * @param unit the {@link TimeUnit units} of the ceiling
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withCeiling(long ceiling, TimeUnit unit) {
+            this.ceilingMillis = unit.toMillis(ceiling);
+            return this;
+        }
+
+        /**
+         * @param uptime how long a connection must stay up before the attempt count is reset
+         * @param unit the {@link TimeUnit units} of the uptime
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withStableUptime(long uptime, TimeUnit unit) {
+            this.stableMillis = unit.toMillis(uptime);
+            return this;
+        }
+
+        /**
+         * @param seed a seed for the jitter, making the sequence of delays repeatable
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Build a policy for one WebSocket.
+         *
+         * @param connectivity the {@link ConnectivityMonitor} which gates attempts
+         *
+         * @return the {@link ReconnectPolicy policy}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public ReconnectPolicy build(ConnectivityMonitor connectivity) throws CogsBuilderException {
+            if (strategy == null)
+                throw new CogsBuilderException("Strategy must not be null.");
+            if (connectivity == null)
+                throw new CogsBuilderException("Connectivity monitor must not be null.");
+            if (ceilingMillis < 1)
+                throw new CogsBuilderException("Ceiling must be positive.");
+            if (stableMillis < 0)
+                throw new CogsBuilderException("Stable uptime must not be negative.");
+
+            return new ReconnectPolicy(this, connectivity);
+        }
+    }
+}
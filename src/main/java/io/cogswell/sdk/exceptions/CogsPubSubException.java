@@ -0,0 +1,34 @@
+package io.cogswell.sdk.exceptions;
+
+/**
+ * An error response from the Pub/Sub service, or the failure of a request before a response
+ * arrived.
+ */
+public class CogsPubSubException extends RuntimeException {
+    private final int code;
+    private final String details;
+
+    public CogsPubSubException(String message) {
+        this(message, 0, null);
+    }
+
+    public CogsPubSubException(String message, int code, String details) {
+        super(code == 0 ? message : message + " (" + code + ")");
+        this.code = code;
+        this.details = details;
+    }
+
+    /**
+     * @return the response code, or 0 if the request failed before a response arrived
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the details of the error supplied by the service, or null
+     */
+    public String getDetails() {
+        return details;
+    }
+}
@@ -0,0 +1,74 @@
+package io.cogswell.sdk.json;
+
+/**
+ * A {@link JsonArray} read in place from a {@link JsonIndex}. Elements are materialized from
+ * the document text when they are accessed.
+ */
+class IndexedJsonArray extends JsonArray {
+    private static JsonNull NULL = JsonNull.singleton;
+
+    private final JsonIndex index;
+    private final int entry;
+
+    // Built on the first positional access.
+    private int[] elements;
+
+    IndexedJsonArray(JsonIndex index, int entry) {
+        super(null);
+        this.index = index;
+        this.entry = entry;
+    }
+
+    private int element(int position) {
+        if (elements == null) {
+            elements = index.elements(entry);
+        }
+
+        return (position < 0 || position >= elements.length) ? -1 : elements[position];
+    }
+
+    @Override public JsonNode obj(String key) { return NULL; }
+    @Override public JsonNode obj(int index) {
+        int value = element(index);
+
+        return (value < 0 || this.index.type(value) != JsonIndex.OBJECT) ? NULL : this.index.node(value);
+    }
+
+    @Override public JsonNode arr(String key) { return NULL; }
+    @Override public JsonNode arr(int index) {
+        int value = element(index);
+
+        return (value < 0 || this.index.type(value) != JsonIndex.ARRAY) ? NULL : this.index.node(value);
+    }
+
+    @Override public String str(String key) { return null; }
+    @Override public String str(int index) {
+        int value = element(index);
+
+        return value < 0 ? null : this.index.string(value);
+    }
+
+    @Override public Number num(String key) { return null; }
+    @Override public Number num(int index) {
+        int value = element(index);
+
+        return value < 0 ? null : this.index.number(value);
+    }
+
+    @Override public Boolean bool(String key) { return null; }
+    @Override public Boolean bool(int index) {
+        int value = element(index);
+
+        return value < 0 ? null : this.index.bool(value);
+    }
+
+    @Override public boolean isNull() { return false; }
+    @Override public boolean isNull(String key) { return true; }
+    @Override public boolean isNull(int index) {
+        int value = element(index);
+
+        return value < 0 || this.index.type(value) == JsonIndex.NULL;
+    }
+
+    @Override public String toString() { return index.string(entry); }
+}
@@ -0,0 +1,63 @@
+package io.cogswell.sdk.json;
+
+/**
+ * A {@link JsonObject} read in place from a {@link JsonIndex}. Member values are materialized
+ * from the document text when they are accessed.
+ */
+class IndexedJsonObject extends JsonObject {
+    private static JsonNull NULL = JsonNull.singleton;
+
+    private final JsonIndex index;
+    private final int entry;
+
+    IndexedJsonObject(JsonIndex index, int entry) {
+        super(null);
+        this.index = index;
+        this.entry = entry;
+    }
+
+    @Override public JsonNode obj(int index) { return NULL; }
+    @Override public JsonNode obj(String key) {
+        int value = index.member(entry, key);
+
+        return (value < 0 || index.type(value) != JsonIndex.OBJECT) ? NULL : index.node(value);
+    }
+
+    @Override public JsonNode arr(int index) { return NULL; }
+    @Override public JsonNode arr(String key) {
+        int value = index.member(entry, key);
+
+        return (value < 0 || index.type(value) != JsonIndex.ARRAY) ? NULL : index.node(value);
+    }
+
+    @Override public String str(int index) { return null; }
+    @Override public String str(String key) {
+        int value = index.member(entry, key);
+
+        return value < 0 ? null : index.string(value);
+    }
+
+    @Override public Number num(int index) { return null; }
+    @Override public Number num(String key) {
+        int value = index.member(entry, key);
+
+        return value < 0 ? null : index.number(value);
+    }
+
+    @Override public Boolean bool(int index) { return null; }
+    @Override public Boolean bool(String key) {
+        int value = index.member(entry, key);
+
+        return value < 0 ? null : index.bool(value);
+    }
+
+    @Override public boolean isNull() { return false; }
+    @Override public boolean isNull(String key) {
+        int value = index.member(entry, key);
+
+        return value < 0 || index.type(value) == JsonIndex.NULL;
+    }
+    @Override public boolean isNull(int index) { return true; }
+
+    @Override public String toString() { return index.string(entry); }
+}
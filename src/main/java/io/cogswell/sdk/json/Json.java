@@ -1,18 +1,38 @@
 package io.cogswell.sdk.json;
 
 import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
 /**
  * Created by jedwards on 5/3/16.
  */
 public class Json {
+    /**
+     * Parse a JSON object. The text is indexed in a single pass; values are only materialized
+     * when they are read from the returned node.
+     *
+     * @param json the JSON text
+     *
+     * @return the object, or {@link JsonNull} if the text is not a well formed JSON object
+     */
     public static JsonNode parse(String json) {
+        return parse(json, 0, json.length());
+    }
+
+    /**
+     * Parse a JSON object held in a range of a larger text, such as a member of a frame which
+     * has already been scanned, without copying it out first.
+     *
+     * @param text the text containing the object
+     * @param start the offset at which the object starts
+     * @param end the offset just past the end of the object
+     *
+     * @return the object, or {@link JsonNull} if the range is not a well formed JSON object
+     */
+    public static JsonNode parse(String text, int start, int end) {
         try {
-            JSONTokener tokener = new JSONTokener(json);
-            JSONObject root = new JSONObject(tokener);
-            return new JsonObject(root);
+            JsonIndex index = new JsonIndex(text, start, end);
+
+            return index.type(0) == JsonIndex.OBJECT ? index.node(0) : JsonNull.singleton;
         } catch (JSONException e) {
             return JsonNull.singleton;
         }
@@ -0,0 +1,451 @@
+package io.cogswell.sdk.json;
+
+import org.json.JSONException;
+
+/**
+ * A JSON document indexed in a single pass over its text.
+ *
+ * Parsing records one entry per value on a flat int tape: its kind, where its text starts and
+ * ends, and, for objects and arrays, the entry just past its last descendant so that whole
+ * subtrees can be stepped over. Nothing else is allocated while parsing. Strings and numbers
+ * are materialized from the text only when they are read, and the {@link JsonNode} wrappers
+ * for objects and arrays are created once, on first access.
+ *
+ * Object members are stored as a key entry followed by a value entry.
+ */
+final class JsonIndex {
+    static final int OBJECT = 1;
+    static final int ARRAY = 2;
+    static final int STRING = 3;
+    static final int NUMBER = 4;
+    static final int TRUE = 5;
+    static final int FALSE = 6;
+    static final int NULL = 7;
+
+    private static final int TYPE_MASK = 0xff;
+    // A string containing escapes, or a number with a fraction or exponent.
+    private static final int FLAG_COMPLEX = 0x100;
+
+    private static final int KIND = 0;
+    private static final int START = 1;
+    private static final int END = 2;
+    private static final int NEXT = 3;
+    private static final int WIDTH = 4;
+
+    final String text;
+
+    private int[] tape;
+    private int count = 0;
+
+    private JsonNode[] nodes;
+
+    private final int limit;
+    private int pos;
+
+    /**
+     * Index a document held in a range of a larger text.
+     *
+     * @param text the text
+     * @param start the offset at which the document starts
+     * @param end the offset just past the end of the document
+     *
+     * @throws JSONException if the range is not a well formed JSON object or array
+     */
+    JsonIndex(String text, int start, int end) throws JSONException {
+        this.text = text;
+        this.pos = start;
+        this.limit = end;
+        this.tape = new int[Math.max(64, (end - start) / 2)];
+        index();
+    }
+
+    int type(int entry) {
+        return tape[entry * WIDTH + KIND] & TYPE_MASK;
+    }
+
+    /**
+     * @return the entry following this one and all of its descendants
+     */
+    int next(int entry) {
+        return tape[entry * WIDTH + NEXT];
+    }
+
+    /**
+     * Find an object member.
+     *
+     * @param object the object's entry
+     * @param key the member name
+     *
+     * @return the entry of the member's value, or -1 if there is no such member
+     */
+    int member(int object, String key) {
+        int end = next(object);
+        int keyLength = key.length();
+
+        for (int entry = object + 1; entry < end; entry = next(entry + 1)) {
+            int base = entry * WIDTH;
+            int start = tape[base + START];
+
+            if ((tape[base + KIND] & FLAG_COMPLEX) == 0) {
+                if (tape[base + END] - start == keyLength && text.regionMatches(start, key, 0, keyLength)) {
+                    return entry + 1;
+                }
+            } else if (string(entry).equals(key)) {
+                return entry + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the entries of an array's elements, in order
+     */
+    int[] elements(int array) {
+        int end = next(array);
+        int size = 0;
+
+        for (int entry = array + 1; entry < end; entry = next(entry)) {
+            size++;
+        }
+
+        int[] elements = new int[size];
+        int i = 0;
+
+        for (int entry = array + 1; entry < end; entry = next(entry)) {
+            elements[i++] = entry;
+        }
+
+        return elements;
+    }
+
+    /**
+     * The wrapper for an object or array entry, created on first use.
+     */
+    JsonNode node(int entry) {
+        if (nodes == null) {
+            nodes = new JsonNode[count];
+        }
+
+        JsonNode node = nodes[entry];
+
+        if (node == null) {
+            node = type(entry) == OBJECT ? new IndexedJsonObject(this, entry) : new IndexedJsonArray(this, entry);
+            nodes[entry] = node;
+        }
+
+        return node;
+    }
+
+    /**
+     * The value as a string, coerced the way org.json's getString() coerces it.
+     */
+    String string(int entry) {
+        int base = entry * WIDTH;
+        int start = tape[base + START];
+        int end = tape[base + END];
+
+        if (type(entry) == STRING && (tape[base + KIND] & FLAG_COMPLEX) != 0) {
+            return unescape(start, end);
+        }
+
+        return text.substring(start, end);
+    }
+
+    /**
+     * The value as a {@link Double}, matching org.json's getDouble(). Strings holding numbers
+     * are converted, as getDouble() does.
+     *
+     * @return the number, or null if the value is not numeric
+     */
+    Double number(int entry) {
+        int base = entry * WIDTH;
+        int type = type(entry);
+
+        if (type == NUMBER) {
+            int start = tape[base + START];
+            int end = tape[base + END];
+
+            // Eighteen digits or fewer always fit in a long, and converting that long rounds
+            // exactly as parsing the text would.
+            if ((tape[base + KIND] & FLAG_COMPLEX) == 0 && end - start <= 18) {
+                boolean negative = text.charAt(start) == '-';
+                long value = 0;
+
+                for (int i = negative ? start + 1 : start; i < end; i++) {
+                    value = value * 10 + (text.charAt(i) - '0');
+                }
+
+                return negative ? -(double) value : (double) value;
+            }
+
+            return parseDouble(text.substring(start, end));
+        }
+
+        if (type == STRING) {
+            return parseDouble(string(entry));
+        }
+
+        return null;
+    }
+
+    /**
+     * The value as a boolean. Strings holding "true" or "false" are converted, as org.json's
+     * getBoolean() does.
+     *
+     * @return the boolean, or null if the value is not boolean
+     */
+    Boolean bool(int entry) {
+        switch (type(entry)) {
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case STRING:
+                String value = string(entry);
+
+                if ("true".equalsIgnoreCase(value)) {
+                    return Boolean.TRUE;
+                }
+                if ("false".equalsIgnoreCase(value)) {
+                    return Boolean.FALSE;
+                }
+        }
+
+        return null;
+    }
+
+    private static Double parseDouble(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+
+            c = text.charAt(++i);
+
+            switch (c) {
+                case 'b': builder.append('\b'); break;
+                case 't': builder.append('\t'); break;
+                case 'n': builder.append('\n'); break;
+                case 'f': builder.append('\f'); break;
+                case 'r': builder.append('\r'); break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private int emit(int kind, int start) {
+        if ((count + 1) * WIDTH > tape.length) {
+            int[] grown = new int[tape.length * 2];
+            System.arraycopy(tape, 0, grown, 0, count * WIDTH);
+            tape = grown;
+        }
+
+        int base = count * WIDTH;
+        tape[base + KIND] = kind;
+        tape[base + START] = start;
+        tape[base + NEXT] = count + 1;
+        return count++;
+    }
+
+    private void index() throws JSONException {
+        int[] open = new int[16];
+        boolean[] hasElements = new boolean[16];
+        int depth = 0;
+
+        skipWhitespace();
+        char first = peek();
+
+        if (first != '{' && first != '[') {
+            throw syntaxError("Expected an object or array");
+        }
+
+        do {
+            if (depth > 0) {
+                int container = open[depth - 1];
+                boolean isObject = type(container) == OBJECT;
+
+                skipWhitespace();
+                char c = peek();
+
+                if (c == (isObject ? '}' : ']')) {
+                    pos++;
+                    int base = container * WIDTH;
+                    tape[base + END] = pos;
+                    tape[base + NEXT] = count;
+                    depth--;
+                    continue;
+                }
+
+                if (hasElements[depth - 1]) {
+                    expect(',');
+                    skipWhitespace();
+                }
+                hasElements[depth - 1] = true;
+
+                if (isObject) {
+                    if (peek() != '"') {
+                        throw syntaxError("Expected a member name");
+                    }
+                    string();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                }
+            }
+
+            char c = peek();
+
+            if (c == '{' || c == '[') {
+                if (depth == open.length) {
+                    int[] grownOpen = new int[depth * 2];
+                    boolean[] grownHas = new boolean[depth * 2];
+                    System.arraycopy(open, 0, grownOpen, 0, depth);
+                    System.arraycopy(hasElements, 0, grownHas, 0, depth);
+                    open = grownOpen;
+                    hasElements = grownHas;
+                }
+
+                open[depth] = emit(c == '{' ? OBJECT : ARRAY, pos);
+                hasElements[depth] = false;
+                depth++;
+                pos++;
+            } else if (c == '"') {
+                string();
+            } else if (c == 't') {
+                literal(TRUE, "true");
+            } else if (c == 'f') {
+                literal(FALSE, "false");
+            } else if (c == 'n') {
+                literal(NULL, "null");
+            } else {
+                number();
+            }
+        } while (depth > 0);
+    }
+
+    private void string() throws JSONException {
+        int start = pos + 1;
+        int kind = STRING;
+        int length = limit;
+
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '"') {
+                int entry = emit(kind, start);
+                tape[entry * WIDTH + END] = i;
+                pos = i + 1;
+                return;
+            }
+
+            if (c == '\\') {
+                kind |= FLAG_COMPLEX;
+                i++;
+
+                if (i < length && text.charAt(i) == 'u') {
+                    if (i + 4 >= length) {
+                        break;
+                    }
+                    for (int digit = i + 1; digit <= i + 4; digit++) {
+                        if (Character.digit(text.charAt(digit), 16) < 0) {
+                            throw syntaxError("Invalid escape");
+                        }
+                    }
+                }
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private void number() throws JSONException {
+        int start = pos;
+        int kind = NUMBER;
+        int length = limit;
+
+        if (pos < length && text.charAt(pos) == '-') {
+            pos++;
+        }
+
+        int digits = pos;
+
+        while (pos < length) {
+            char c = text.charAt(pos);
+
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                kind |= FLAG_COMPLEX;
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        if (pos == digits) {
+            throw syntaxError("Expected a value");
+        }
+
+        int entry = emit(kind, start);
+        tape[entry * WIDTH + END] = pos;
+    }
+
+    private void literal(int kind, String word) throws JSONException {
+        if (pos + word.length() > limit || !text.startsWith(word, pos)) {
+            throw syntaxError("Expected " + word);
+        }
+
+        int entry = emit(kind, pos);
+        pos += word.length();
+        tape[entry * WIDTH + END] = pos;
+    }
+
+    private char peek() {
+        return pos < limit ? text.charAt(pos) : 0;
+    }
+
+    private void expect(char c) throws JSONException {
+        if (peek() != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        int length = limit;
+
+        while (pos < length) {
+            char c = text.charAt(pos);
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at " + pos);
+    }
+}
@@ -0,0 +1,549 @@
+package io.cogswell.sdk.json;
+
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+
+/**
+ * A forward-only pull scanner over UTF-8 encoded JSON.
+ *
+ * The scanner reads straight from the byte array it is given and allocates nothing unless a
+ * value is actually read: names can be matched against constants in place, and unwanted values
+ * are skipped without being decoded. Use {@link #position()} around {@link #skipValue()} to
+ * capture a value as a slice of the input for later parsing.
+ *
+ * Malformed input is reported as a {@link JSONException}.
+ */
+public class JsonScanner {
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private final byte[] in;
+    private final int end;
+    private int pos;
+
+    // One flag per open container: whether the next element must be preceded by a comma.
+    private boolean[] needsComma = new boolean[8];
+    private int depth = 0;
+
+    public JsonScanner(byte[] in) {
+        this(in, 0, in.length);
+    }
+
+    /**
+     * @param in the UTF-8 encoded input
+     * @param start the offset of the first byte to scan
+     * @param end the offset just past the last byte to scan
+     */
+    public JsonScanner(byte[] in, int start, int end) {
+        this.in = in;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the input being scanned
+     */
+    public byte[] input() {
+        return in;
+    }
+
+    /**
+     * @return the offset of the next unread byte
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * @return the first byte of the next token, or -1 at the end of the input
+     */
+    public int peek() {
+        skipWhitespace();
+        return pos < end ? in[pos] : -1;
+    }
+
+    public void beginObject() throws JSONException {
+        expect('{');
+        push();
+    }
+
+    public void endObject() throws JSONException {
+        expect('}');
+        depth--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect('[');
+        push();
+    }
+
+    public void endArray() throws JSONException {
+        expect(']');
+        depth--;
+    }
+
+    /**
+     * Move to the next member of the current object or element of the current array.
+     *
+     * @return <tt>true</tt> if there is another member or element, <tt>false</tt> at the end of the container
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public boolean hasNext() throws JSONException {
+        int c = peek();
+
+        if (c == '}' || c == ']') {
+            return false;
+        }
+
+        if (needsComma[depth - 1]) {
+            expect(',');
+        }
+        needsComma[depth - 1] = true;
+        return true;
+    }
+
+    /**
+     * Read a member name, and the colon after it.
+     *
+     * @return the name
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public String nextName() throws JSONException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Read a member name, and the colon after it, and compare it to a name known in advance.
+     * Names without escapes are compared in place, without decoding.
+     *
+     * @param name the expected name as ASCII bytes
+     *
+     * @return <tt>true</tt> if the member has that name
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public boolean nextNameIs(byte[] name) throws JSONException {
+        skipWhitespace();
+        int start = pos + 1;
+        int close = skipString();
+        boolean matches;
+
+        if (indexOf('\\', start, close) < 0) {
+            matches = close - start == name.length && regionMatches(start, name);
+        } else {
+            matches = decode(start, close).equals(new String(name, UTF_8));
+        }
+
+        expect(':');
+        return matches;
+    }
+
+    /**
+     * Compare a member name read by {@link #skipName()} to a name known in advance.
+     *
+     * @param start the offset returned by {@link #skipName()}
+     * @param name the expected name as ASCII bytes
+     *
+     * @return <tt>true</tt> if the member has that name
+     */
+    public boolean nameEquals(int start, byte[] name) {
+        // The closing quote lies just past a name which matches.
+        int close = start + name.length;
+        return close < end && in[close] == '"' && regionMatches(start, name);
+    }
+
+    /**
+     * Skip a member name, and the colon after it, returning where its characters begin so it
+     * can be compared with {@link #nameEquals(int, byte[])}.
+     *
+     * @return the offset of the first character of the name
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public int skipName() throws JSONException {
+        skipWhitespace();
+        int start = pos + 1;
+        skipString();
+        expect(':');
+        return start;
+    }
+
+    /**
+     * @return the next value, which must be a string
+     *
+     * @throws JSONException if the input is malformed or the value is not a string
+     */
+    public String nextString() throws JSONException {
+        skipWhitespace();
+        int start = pos + 1;
+        int close = skipString();
+
+        return decode(start, close);
+    }
+
+    /**
+     * Read the next value as text: strings are unquoted and unescaped, anything else (numbers,
+     * literals, objects and arrays) is returned exactly as it appears in the input.
+     *
+     * @return the value's text, or <tt>null</tt> for a JSON null
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public String nextText() throws JSONException {
+        int c = peek();
+
+        if (c == '"') {
+            return nextString();
+        }
+
+        if (c == 'n') {
+            skipValue();
+            return null;
+        }
+
+        int start = pos;
+        skipValue();
+        return new String(in, start, pos - start, UTF_8);
+    }
+
+    /**
+     * @return the next value, which must be a number
+     *
+     * @throws JSONException if the input is malformed or the value is not a number
+     */
+    public double nextDouble() throws JSONException {
+        skipWhitespace();
+        int start = pos;
+        skipNumber();
+
+        try {
+            return Double.parseDouble(new String(in, start, pos - start, UTF_8));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number");
+        }
+    }
+
+    /**
+     * @return the next value, which must be an integral number which fits in a long
+     *
+     * @throws JSONException if the input is malformed or the value is not an integral number
+     */
+    public long nextLong() throws JSONException {
+        skipWhitespace();
+        int start = pos;
+        int fraction = skipNumber();
+
+        if (fraction < 0) {
+            long value = 0;
+            boolean negative = in[start] == '-';
+
+            for (int i = negative ? start + 1 : start; i < pos; i++) {
+                value = value * 10 + (in[i] - '0');
+            }
+
+            // Eighteen digits or fewer cannot overflow.
+            if (pos - start <= 18) {
+                return negative ? -value : value;
+            }
+        }
+
+        double value;
+
+        try {
+            value = Double.parseDouble(new String(in, start, pos - start, UTF_8));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number");
+        }
+
+        if (value != Math.rint(value) || Math.abs(value) > Long.MAX_VALUE) {
+            throw syntaxError("Expected a long");
+        }
+        return (long) value;
+    }
+
+    /**
+     * @return the next value, which must be <tt>true</tt> or <tt>false</tt>
+     *
+     * @throws JSONException if the input is malformed or the value is not a boolean
+     */
+    public boolean nextBoolean() throws JSONException {
+        int c = peek();
+
+        if (c == 't') {
+            literal("true");
+            return true;
+        }
+        if (c == 'f') {
+            literal("false");
+            return false;
+        }
+        throw syntaxError("Expected a boolean");
+    }
+
+    /**
+     * Skip the next value, including everything nested inside it, without decoding it.
+     *
+     * @throws JSONException if the input is malformed
+     */
+    public void skipValue() throws JSONException {
+        int c = peek();
+
+        switch (c) {
+            case '"':
+                skipString();
+                break;
+            case '{':
+            case '[':
+                skipContainer();
+                break;
+            case 't':
+                literal("true");
+                break;
+            case 'f':
+                literal("false");
+                break;
+            case 'n':
+                literal("null");
+                break;
+            default:
+                skipNumber();
+        }
+    }
+
+    /**
+     * Require that nothing but whitespace remains.
+     *
+     * @throws JSONException if there is trailing content
+     */
+    public void endDocument() throws JSONException {
+        if (peek() != -1) {
+            throw syntaxError("Unexpected trailing content");
+        }
+    }
+
+    /**
+     * Decode a range of the input as a string body, resolving escapes.
+     *
+     * @param start the offset just past the opening quote
+     * @param close the offset of the closing quote
+     *
+     * @return the decoded string
+     *
+     * @throws JSONException if an escape is malformed
+     */
+    public String decode(int start, int close) throws JSONException {
+        int escape = indexOf('\\', start, close);
+
+        if (escape < 0) {
+            return new String(in, start, close - start, UTF_8);
+        }
+
+        StringBuilder builder = new StringBuilder(close - start);
+        int segment = start;
+
+        while (escape >= 0) {
+            builder.append(new String(in, segment, escape - segment, UTF_8));
+
+            char c = (char) in[escape + 1];
+            segment = escape + 2;
+
+            switch (c) {
+                case 'b': builder.append('\b'); break;
+                case 't': builder.append('\t'); break;
+                case 'n': builder.append('\n'); break;
+                case 'f': builder.append('\f'); break;
+                case 'r': builder.append('\r'); break;
+                case 'u':
+                    if (segment + 4 > close) {
+                        throw syntaxError("Truncated escape");
+                    }
+                    builder.append((char) hex(segment, 4));
+                    segment += 4;
+                    break;
+                default:
+                    // \" \\ \/ and, leniently, anything else stand for themselves.
+                    builder.append(c);
+            }
+
+            escape = indexOf('\\', segment, close);
+        }
+
+        builder.append(new String(in, segment, close - segment, UTF_8));
+        return builder.toString();
+    }
+
+    private void push() {
+        if (depth == needsComma.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(needsComma, 0, grown, 0, depth);
+            needsComma = grown;
+        }
+
+        needsComma[depth++] = false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = in[pos];
+
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) throws JSONException {
+        if (peek() != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    /**
+     * Skip a string, which must start at the current position.
+     *
+     * @return the offset of the closing quote
+     */
+    private int skipString() throws JSONException {
+        if (pos >= end || in[pos] != '"') {
+            throw syntaxError("Expected a string");
+        }
+
+        for (int i = pos + 1; i < end; i++) {
+            byte b = in[i];
+
+            if (b == '"') {
+                pos = i + 1;
+                return i;
+            }
+            if (b == '\\') {
+                i++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Skip an object or array by counting brackets, skipping strings so brackets inside them
+     * are ignored.
+     */
+    private void skipContainer() throws JSONException {
+        int nesting = 0;
+
+        while (pos < end) {
+            byte b = in[pos];
+
+            if (b == '"') {
+                skipString();
+                continue;
+            }
+
+            pos++;
+
+            if (b == '{' || b == '[') {
+                nesting++;
+            } else if (b == '}' || b == ']') {
+                if (--nesting == 0) {
+                    return;
+                }
+            }
+        }
+
+        throw syntaxError("Unterminated container");
+    }
+
+    /**
+     * Skip a number.
+     *
+     * @return -1 if the number is a plain integer, otherwise the offset of its first '.', 'e' or 'E'
+     */
+    private int skipNumber() throws JSONException {
+        int start = pos;
+        int fraction = -1;
+
+        if (pos < end && in[pos] == '-') {
+            pos++;
+        }
+
+        while (pos < end) {
+            byte b = in[pos];
+
+            if (b >= '0' && b <= '9') {
+                pos++;
+            } else if (b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                if (fraction < 0) {
+                    fraction = pos;
+                }
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        if (pos == start || (pos == start + 1 && in[start] == '-')) {
+            throw syntaxError("Expected a value");
+        }
+        return fraction;
+    }
+
+    private void literal(String word) throws JSONException {
+        int length = word.length();
+
+        if (pos + length > end) {
+            throw syntaxError("Expected " + word);
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (in[pos + i] != word.charAt(i)) {
+                throw syntaxError("Expected " + word);
+            }
+        }
+        pos += length;
+    }
+
+    private int hex(int start, int digits) throws JSONException {
+        int value = 0;
+
+        for (int i = start; i < start + digits; i++) {
+            int digit = Character.digit(in[i], 16);
+
+            if (digit < 0) {
+                throw syntaxError("Invalid escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (in[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, byte[] name) {
+        if (start + name.length > end) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length; i++) {
+            if (in[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at " + pos);
+    }
+}
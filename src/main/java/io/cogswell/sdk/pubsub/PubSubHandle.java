@@ -3,35 +3,155 @@ package io.cogswell.sdk.pubsub;
 import android.net.Uri;
 import android.util.Log;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
+import com.koushikdutta.async.AsyncServer;
 import com.koushikdutta.async.callback.CompletedCallback;
 import com.koushikdutta.async.http.AsyncHttpClient;
 import com.koushikdutta.async.http.AsyncHttpRequest;
 import com.koushikdutta.async.http.Headers;
 import com.koushikdutta.async.http.WebSocket;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.cogswell.sdk.Auth;
+import io.cogswell.sdk.FrameCompression;
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.HeartbeatMonitor;
+import io.cogswell.sdk.JsonBodyWriter;
+import io.cogswell.sdk.ReconnectPolicy;
+import io.cogswell.sdk.exceptions.CogsPubSubException;
 import io.cogswell.sdk.json.Json;
 import io.cogswell.sdk.json.JsonNode;
-import io.cogswell.sdk.subscription.CogsMessage;
+import io.cogswell.sdk.json.JsonObject;
 
 public class PubSubHandle {
     private String[] keys;
     private PubSubOptions options;
     SettableFuture<PubSubHandle> setupFuture;
     AtomicBoolean isSetupInProgress;
-    WebSocket webSocket;
+    volatile WebSocket webSocket;
+
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private final ReconnectPolicy reconnectPolicy;
+    private volatile HeartbeatMonitor.Heartbeat heartbeat;
+    private final FrameCompression compression;
+    private volatile FrameCompression.Session compressionSession;
+
+    /**
+     * The sequence number of the latest request
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Requests awaiting a response, by sequence number
+     */
+    private final ConcurrentHashMap<Long, SettableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribe and unsubscribe requests awaiting a response, by sequence number
+     */
+    private final ConcurrentHashMap<Long, SettableFuture<List<String>>> pendingControl = new ConcurrentHashMap<>();
+
+    /**
+     * The handlers of each subscribed channel. The arrays are never modified; a change
+     * replaces a channel's array, so dispatch reads the table without locking.
+     */
+    private final ConcurrentHashMap<String, PubSubMessageHandler[]> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribe requests awaiting a response, by channel. Guarded by itself, together with
+     * adding handlers to the routes, so a handler which joins a channel either finds its
+     * subscribe pending or the outcome settled.
+     */
+    private final Map<String, PendingSubscribe> pendingSubscribes = new HashMap<>();
+
+    /**
+     * Permits for publishes in flight, or null if the window is unlimited
+     */
+    private final Semaphore window;
+
+    /**
+     * Publishes waiting for the window to slide, under {@link PubSubOptions.WindowFullPolicy#QUEUE}
+     */
+    private final ConcurrentLinkedQueue<Publish> queued = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Set while a thread is sending queued publishes
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Returns the permit of a publish once it completes, however it completes.
+     */
+    private final Runnable slideWindow = new Runnable() {
+        @Override
+        public void run() {
+            window.release();
+            drainQueue();
+        }
+    };
+
+    /**
+     * Publishes sent by {@link #publishWithoutAck(String, String)}, and those it could not send
+     */
+    private final AtomicLong unackedSentCount = new AtomicLong();
+    private final AtomicLong unackedDroppedCount = new AtomicLong();
+
+    /**
+     * Coalesces publishes into multi-message frames, or null if batching is disabled
+     */
+    private final PublishBatcher batcher;
+
+    /**
+     * A publish not yet sent.
+     */
+    static class Publish {
+        final String channel;
+        final String message;
+        final SettableFuture<String> response = SettableFuture.create();
+
+        Publish(String channel, String message) {
+            this.channel = channel;
+            this.message = message;
+        }
+    }
 
     /**
      * This class can only be instantiated using it's factory method.  This allows the construction
      * to be completed asynchronously.
      */
-    private PubSubHandle(){
+    PubSubHandle(String[] keys, PubSubOptions options){
+        this.keys = keys;
+        this.options = (options==null) ? PubSubOptions.defaultOptions : options;
+        this.window = this.options.publishWindow > 0 ? new Semaphore(this.options.publishWindow) : null;
+        this.batcher = this.options.publishBatching == null ? null : this.options.publishBatching.build(new PublishBatcher.Sink() {
+            @Override
+            public void send(List<Publish> batch) {
+                PubSubHandle.this.send(batch);
+            }
+        });
         isSetupInProgress = new AtomicBoolean(false);
         setupFuture = SettableFuture.create();
+        reconnectPolicy = GambitSDKService.getInstance().newReconnectPolicy();
+        compression = GambitSDKService.getInstance().getFrameCompression();
 ;   };
 
     public static ListenableFuture<PubSubHandle> connect(String[] keys){
@@ -39,10 +159,8 @@ public class PubSubHandle {
     }
 
     public static ListenableFuture<PubSubHandle> connect(String[] keys, PubSubOptions options){
-        PubSubHandle h = new PubSubHandle();
+        PubSubHandle h = new PubSubHandle(keys, options);
         try {
-            h.keys = keys;
-            h.options = (options==null) ? PubSubOptions.defaultOptions : options;
             h.reconnect();
         } catch (Exception e) {
             h.setupFuture.setException(e);
@@ -59,6 +177,10 @@ public class PubSubHandle {
             headers.add("Payload", ph.payloadBase64);
             headers.add("PayloadHMAC", ph.payloadHmac);
 
+            if (compression != null) {
+                compression.offer(headers);
+            }
+
             AsyncHttpRequest httpRequest = new AsyncHttpRequest(options.uri, "GET", headers);
 
             AsyncHttpClient.getDefaultInstance().websocket(httpRequest, "websocket", new AsyncHttpClient.WebSocketConnectCallback() {
@@ -67,52 +189,18 @@ public class PubSubHandle {
                     isSetupInProgress.set(false);
                     if (error != null) {
                         Log.e("Cogs-SDK", "Error on subscription WebSocket connect.", error);
-                        setupFuture.setException(error);
+                        if (!setupFuture.setException(error)) {
+                            delayedReconnect();
+                        }
                     } else if (webSocket == null) {
                         Log.e("Cogs-SDK", "Error on subscription WebSocket connect - could not connect.");
-                        setupFuture.setException(new Exception("Error on subscription WebSocket connect - could not connect - null websocket."));
+                        if (!setupFuture.setException(new Exception("Error on subscription WebSocket connect - could not connect - null websocket."))) {
+                            delayedReconnect();
+                        }
+                    } else if (done.get()) {
+                        webSocket.close();
                     } else {
-                        //setWebSocket(webSocket);
-                        setupFuture.set(PubSubHandle.this);
-                        PubSubHandle.this.webSocket = webSocket;
-
-                        webSocket.setStringCallback(new WebSocket.StringCallback() {
-                            @Override
-                            public void onStringAvailable(String str) {
-                                JsonNode json = Json.parse(str);
-
-                                if (!json.isNull()) {
-                                    CogsMessage message = new CogsMessage(json);
-                                    try {
-                                        Log.d("Cogs-SDK", "message.getMessageId():" + message.getMessageId());
-                                        //ackMessage(message.getMessageId());
-                                    } finally {
-                                        Log.d("Cogs-SDK", "message" + message);
-                                    }
-                                }
-                            }
-                        });
-
-                        webSocket.setClosedCallback(new CompletedCallback() {
-                            @Override
-                            public void onCompleted(Exception error) {
-                                if (error != null) {
-                                    Log.e("Cogs-SDK", "Error caused WebSocket to close.", error);
-                                } else {
-                                    Log.i("Cogs-SDK", "WebSocket closed without error.");
-                                }
-                                /*
-                                // TODO: GAM-2659: Implement reconnect strategy.
-                                try {
-                                    // Scheduler.schedule(reconnectDelay, reconnect)
-                                    // PubSubHandle.this.reconnect();
-                                } catch (Auth.AuthKeyError authError) {
-                                    Log.e("Cogs-SDK", "Error reconnecting: Auth error:", authError);
-                                }*/
-                            }
-                        });
-
-                        //currentHandler().connected();
+                        opened(webSocket);
                     }
                 }
             });
@@ -146,24 +234,675 @@ public class PubSubHandle {
     }
 
     /**
-     * Publishes a message to the server. If an error occurs publishing the message,
-     * it will be reported to the error handler if it has been set.
+     * Take over a newly connected WebSocket.
      *
-     * @param channel
-     * @param message
+     * @param ws the {@link WebSocket}
      */
-    public void publish(String channel, String message) {
-        String payload = String.format(
-                "{"+
-                        "\"seq\":\"%s\","+
-                        "\"action\":\"%s\","+
-                        "\"chan\":\"%s\""+
-                        "\"msg\":\"%s\""+
-                        "}",
-                1, "pub", channel, message);
+    void opened(final WebSocket ws) {
+        //setWebSocket(webSocket);
+        webSocket = ws;
+        reconnectPolicy.connected();
+
+        final HeartbeatMonitor.Heartbeat wsHeartbeat = GambitSDKService.getInstance().watchHeartbeat(ws);
+        heartbeat = wsHeartbeat;
+
+        final FrameCompression.Session session = compression == null ? null : compression.newSession();
+        compressionSession = session;
+
+        WebSocket.StringCallback messages = new WebSocket.StringCallback() {
+            @Override
+            public void onStringAvailable(String str) {
+                received(str);
+            }
+        };
+
+        if (session != null) {
+            session.attach(ws, messages);
+        } else {
+            ws.setStringCallback(messages);
+        }
+
+        // The server forgets subscriptions with the connection which made them.
+        for (final String channel : routes.keySet()) {
+            Futures.addCallback(control("subscribe", channel), new FutureCallback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> channels) {
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    Log.e("Cogs-SDK", "Error restoring subscription to channel '" + channel + "'.", error);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        ws.setClosedCallback(new CompletedCallback() {
+            @Override
+            public void onCompleted(Exception error) {
+                if (wsHeartbeat != null) {
+                    wsHeartbeat.cancel();
+                }
+
+                if (session != null) {
+                    // Unpublish the session before ending it, so later sends go uncompressed.
+                    if (compressionSession == session) {
+                        compressionSession = null;
+                    }
+                    session.end();
+                }
+
+                if (error != null) {
+                    Log.e("Cogs-SDK", "Error caused WebSocket to close.", error);
+                } else {
+                    Log.i("Cogs-SDK", "WebSocket closed without error.");
+                }
+
+                if (webSocket == ws) {
+                    webSocket = null;
+                }
+
+                // Responses to requests sent on this connection will not arrive on the next.
+                failQueued(new CogsPubSubException("The connection closed before the publish was sent."));
+                if (batcher != null) {
+                    // With no connection, every batch fails as it is flushed.
+                    batcher.flush();
+                }
+                failPending(new CogsPubSubException("The connection closed before the server responded."));
+
+                reconnectPolicy.disconnected();
+                delayedReconnect();
+            }
+        });
+
+        // Only now is the handle ready; listeners may publish straight away.
+        setupFuture.set(PubSubHandle.this);
+
+        //currentHandler().connected();
+    }
+
+    private void received(String str) {
+        if (str.startsWith("[")) {
+            // The responses to a batch of publishes.
+            try {
+                JSONArray responses = new JSONArray(str);
+
+                for (int i = 0; i < responses.length(); i++) {
+                    JSONObject response = responses.optJSONObject(i);
+
+                    if (response != null) {
+                        received(new JsonObject(response));
+                    }
+                }
+            } catch (JSONException e) {
+                Log.e("Cogs-SDK", "Dropping malformed response frame.", e);
+            }
+            return;
+        }
+
+        JsonNode json = Json.parse(str);
+
+        if (!json.isNull()) {
+            received(json);
+        }
+    }
+
+    private void received(JsonNode json) {
+        Number seq = json.num("seq");
+
+        if (seq != null) {
+            Number code = json.num("code");
+            CogsPubSubException error = code == null || code.intValue() == 200 ? null :
+                    new CogsPubSubException("Pub/Sub request failed: " + json.str("message"), code.intValue(), json.str("details"));
+
+            SettableFuture<String> response = pending.remove(seq.longValue());
+
+            if (response != null) {
+                if (error == null) {
+                    response.set(json.str("id"));
+                } else {
+                    response.setException(error);
+                }
+                return;
+            }
+
+            SettableFuture<List<String>> controlResponse = pendingControl.remove(seq.longValue());
+
+            if (controlResponse != null) {
+                if (error == null) {
+                    controlResponse.set(channels(json.arr("channels")));
+                } else {
+                    controlResponse.setException(error);
+                }
+                return;
+            }
+
+            Log.w("Cogs-SDK", "Dropping response to unknown request " + seq + ".");
+            return;
+        }
+
+        String channel = json.str("chan");
+        PubSubMessageHandler[] handlers = channel == null ? null : routes.get(channel);
+
+        if (handlers == null) {
+            Log.d("Cogs-SDK", "Dropping message for unsubscribed channel '" + channel + "'.");
+            return;
+        }
+
+        PubSubMessage message = new PubSubMessage(json);
+
+        for (PubSubMessageHandler handler : handlers) {
+            try {
+                handler.onMessage(message);
+            } catch (Throwable t) {
+                Log.e("Cogs-SDK", "Error in message handler for channel '" + channel + "'.", t);
+            }
+        }
+    }
+
+    private static List<String> channels(JsonNode array) {
+        List<String> channels = new ArrayList<>();
+        String channel;
+
+        for (int i = 0; (channel = array.str(i)) != null; i++) {
+            channels.add(channel);
+        }
+
+        return channels;
+    }
+
+    private void failPending(Throwable error) {
+        for (Long seq : pending.keySet()) {
+            SettableFuture<String> response = pending.remove(seq);
+
+            if (response != null) {
+                response.setException(error);
+            }
+        }
+
+        for (Long seq : pendingControl.keySet()) {
+            SettableFuture<List<String>> response = pendingControl.remove(seq);
+
+            if (response != null) {
+                response.setException(error);
+            }
+        }
+    }
+
+    private void delayedReconnect() {
+        if (done.get() || !options.autoReconnect) {
+            return;
+        }
+
+        reconnectPolicy.schedule(new Runnable() {
+            public void run() {
+                if (done.get()) {
+                    return;
+                }
+
+                try {
+                    reconnect();
+                } catch (Auth.AuthKeyError authError) {
+                    Log.e("Cogs-SDK", "Error reconnecting: Auth error:", authError);
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes the connection to the server. It will not be re-established.
+     */
+    public void close() {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+
+        reconnectPolicy.cancel();
+
+        WebSocket ws = webSocket;
+        if (ws != null) {
+            ws.close();
+        }
+    }
+
+    /**
+     * Supplies the heartbeat of the current connection, for its round trip time.
+     *
+     * @return the {@link HeartbeatMonitor.Heartbeat heartbeat}, or null if heartbeats are disabled or there has been no connection
+     */
+    public HeartbeatMonitor.Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * @return the number of requests sent which are awaiting a response
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of publishes waiting for the publish window to slide
+     */
+    public int getQueuedCount() {
+        return queued.size();
+    }
+
+    /**
+     * Publishes a message to the server. If a publish window is configured and full, this
+     * blocks or queues the publish as the {@link PubSubOptions.WindowFullPolicy policy}
+     * directs. It never blocks the AndroidAsync reactor thread, such as from a message
+     * handler; publishes from there are queued.
+     *
+     * @param channel the channel to publish to
+     * @param message the message
+     *
+     * @return a Future which completes with the id the server assigned the message once the
+     * server has acknowledged it, or fails with a {@link CogsPubSubException} if the server
+     * rejects it or the connection closes first
+     */
+    public ListenableFuture<String> publish(String channel, String message) {
+        Publish publish = new Publish(channel, message);
+
+        if (webSocket == null || done.get()) {
+            publish.response.setException(new CogsPubSubException("Not connected."));
+        } else if (window == null) {
+            dispatch(publish);
+        } else if (options.windowFullPolicy == PubSubOptions.WindowFullPolicy.QUEUE
+                || AsyncServer.getDefault().isAffinityThread()) {
+            // Never block the reactor thread, which must stay free to read the acknowledgements
+            // that slide the window. Always through the queue, so that publishes are sent in order.
+            queued.add(publish);
+            drainQueue();
+        } else {
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                publish.response.setException(new CogsPubSubException("Interrupted waiting for the publish window."));
+                return publish.response;
+            }
+
+            publish.response.addListener(slideWindow, MoreExecutors.directExecutor());
+            dispatch(publish);
+        }
 
-        // val (seq, None) = newRequest(false)
-        // socket.foreach(_.send(PublishRequest(seq, channel, message).toJson))
+        return publish.response;
     }
 
+    /**
+     * Send queued publishes while the window has room. Only one thread drains at a time, so
+     * they are sent in the order they were queued; a thread which finds the queue being
+     * drained leaves its publishes to the drainer, which checks again before it stops.
+     */
+    private void drainQueue() {
+        while (!queued.isEmpty() && window.availablePermits() > 0 && draining.compareAndSet(false, true)) {
+            try {
+                while (!queued.isEmpty() && window.tryAcquire()) {
+                    Publish publish = queued.poll();
+
+                    if (publish == null) {
+                        window.release();
+                        break;
+                    }
+
+                    publish.response.addListener(slideWindow, MoreExecutors.directExecutor());
+                    dispatch(publish);
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void failQueued(Throwable error) {
+        Publish publish;
+
+        while ((publish = queued.poll()) != null) {
+            publish.response.setException(error);
+        }
+    }
+
+    /**
+     * Publishes a message to the server, asking it not to acknowledge the message. Intended
+     * for lossy data, such as sensor readings, where a lost message does not matter and an
+     * acknowledgement would only cost bandwidth.
+     *
+     * The message is encoded straight into its frame and sent on the calling thread. It does
+     * not enter the pending request table, the publish window or the batcher, and nothing is
+     * allocated for it beyond the frame. If the server rejects it, the rejection is only
+     * logged.
+     *
+     * @param channel the channel to publish to
+     * @param message the message
+     *
+     * @return <tt>true</tt> if the message was handed to the WebSocket, <tt>false</tt> if it was dropped for want of a connection
+     */
+    public boolean publishWithoutAck(String channel, String message) {
+        WebSocket ws = webSocket;
+
+        if (ws == null || done.get()) {
+            unackedDroppedCount.incrementAndGet();
+            return false;
+        }
+
+        JsonBodyWriter frame = new JsonBodyWriter(channel.length() + message.length() + 64, null)
+                .beginObject()
+                .name("seq").value(sequence.incrementAndGet())
+                .name("action").value("pub")
+                .name("chan").value(channel)
+                .name("msg").value(message)
+                .name("ack").value(false)
+                .endObject();
+
+        try {
+            sendFrame(ws, frame);
+        } catch (Throwable error) {
+            Log.e("Cogs-SDK", "Error sending unacknowledged publish.", error);
+            unackedDroppedCount.incrementAndGet();
+            return false;
+        }
+
+        unackedSentCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the number of messages sent by {@link #publishWithoutAck(String, String)}
+     */
+    public long getUnackedSentCount() {
+        return unackedSentCount.get();
+    }
+
+    /**
+     * @return the number of messages {@link #publishWithoutAck(String, String)} dropped for want of a connection or on a send error
+     */
+    public long getUnackedDroppedCount() {
+        return unackedDroppedCount.get();
+    }
+
+    /**
+     * Send a publish now, or hand it to the batcher.
+     */
+    private void dispatch(Publish publish) {
+        if (batcher != null) {
+            batcher.submit(publish);
+        } else {
+            send(Collections.singletonList(publish));
+        }
+    }
+
+    /**
+     * Send publishes in one frame: a single request, or an array of them.
+     */
+    private void send(List<Publish> publishes) {
+        WebSocket ws = webSocket;
+        if (ws == null || done.get()) {
+            for (Publish publish : publishes) {
+                publish.response.setException(new CogsPubSubException("Not connected."));
+            }
+            return;
+        }
+
+        JSONArray requests = new JSONArray();
+        long[] seqs = new long[publishes.size()];
+
+        for (int i = 0; i < publishes.size(); i++) {
+            Publish publish = publishes.get(i);
+            long seq = sequence.incrementAndGet();
+
+            JSONObject request = new JSONObject();
+            try {
+                request.put("seq", seq);
+                request.put("action", "pub");
+                request.put("chan", publish.channel);
+                request.put("msg", publish.message);
+                request.put("ack", true);
+            } catch (JSONException e) {
+                publish.response.setException(new CogsPubSubException("Error assembling publish request: " + e.getMessage()));
+                continue;
+            }
+
+            // Registered before sending, so the response cannot arrive first.
+            seqs[i] = seq;
+            pending.put(seq, publish.response);
+            requests.put(request);
+        }
+
+        if (requests.length() == 0) {
+            return;
+        }
+
+        String frame = requests.length() == 1 ? requests.optJSONObject(0).toString() : requests.toString();
+
+        try {
+            sendFrame(ws, frame);
+        } catch (Throwable error) {
+            Log.e("Cogs-SDK", "Error sending publish request.", error);
+
+            for (int i = 0; i < publishes.size(); i++) {
+                SettableFuture<String> response = seqs[i] == 0 ? null : pending.remove(seqs[i]);
+
+                if (response != null) {
+                    response.setException(error);
+                }
+            }
+        }
+    }
+
+    private void sendFrame(WebSocket ws, String frame) {
+        FrameCompression.Session session = compressionSession;
+
+        if (session != null) {
+            session.send(ws, frame);
+        } else {
+            ws.send(frame);
+        }
+    }
+
+    private void sendFrame(WebSocket ws, JsonBodyWriter frame) {
+        FrameCompression.Session session = compressionSession;
+
+        if (session != null) {
+            session.send(ws, frame);
+        } else {
+            ws.send(frame.toString());
+        }
+    }
+
+    /**
+     * Subscribes a handler to a channel. Its messages are delivered to every handler
+     * subscribed to the channel. Subscriptions are restored when the connection is replaced.
+     *
+     * @param channel the channel
+     * @param handler the {@link PubSubMessageHandler handler} for the channel's messages
+     *
+     * @return a Future which completes with the channels this handle is subscribed to once
+     * the server has confirmed the subscription, or fails with a {@link CogsPubSubException}
+     * if it refuses it, in which case the handler is removed again. A handler which joins a
+     * channel while its subscribe is still pending shares that outcome.
+     */
+    public ListenableFuture<List<String>> subscribe(final String channel, PubSubMessageHandler handler) {
+        final PendingSubscribe subscribe;
+
+        synchronized (pendingSubscribes) {
+            if (!addRoute(channel, handler)) {
+                PendingSubscribe pending = pendingSubscribes.get(channel);
+
+                if (pending == null) {
+                    // The channel is already subscribed on the server.
+                    return Futures.immediateFuture(getSubscriptions());
+                }
+
+                // Share the outcome of the subscribe already on its way.
+                pending.handlers.add(handler);
+                return pending.response;
+            }
+
+            subscribe = new PendingSubscribe(handler);
+            pendingSubscribes.put(channel, subscribe);
+        }
+
+        Futures.addCallback(control("subscribe", channel), new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> channels) {
+                settle(channel, subscribe, false);
+                subscribe.response.set(channels);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                settle(channel, subscribe, true);
+                subscribe.response.setException(error);
+            }
+        }, MoreExecutors.directExecutor());
+
+        return subscribe.response;
+    }
+
+    /**
+     * Retire a subscribe request once its response has arrived. If the server refused it,
+     * every handler which joined while it was pending is removed again.
+     */
+    private void settle(String channel, PendingSubscribe subscribe, boolean failed) {
+        synchronized (pendingSubscribes) {
+            if (pendingSubscribes.get(channel) == subscribe) {
+                pendingSubscribes.remove(channel);
+            }
+
+            if (failed) {
+                for (PubSubMessageHandler handler : subscribe.handlers) {
+                    removeRoute(channel, handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes a handler from a channel. The server is told once the channel has no
+     * handlers left.
+     *
+     * @param channel the channel
+     * @param handler the {@link PubSubMessageHandler handler} to remove
+     *
+     * @return a Future which completes with the channels this handle remains subscribed to
+     */
+    public ListenableFuture<List<String>> unsubscribe(String channel, PubSubMessageHandler handler) {
+        if (!removeRoute(channel, handler)) {
+            return Futures.immediateFuture(getSubscriptions());
+        }
+
+        return control("unsubscribe", channel);
+    }
+
+    /**
+     * @return the channels with at least one handler
+     */
+    public List<String> getSubscriptions() {
+        return new ArrayList<>(routes.keySet());
+    }
+
+    /**
+     * A subscribe request awaiting its response, with the handlers waiting on it.
+     */
+    private static class PendingSubscribe {
+        final SettableFuture<List<String>> response = SettableFuture.create();
+        final List<PubSubMessageHandler> handlers = new ArrayList<>(1);
+
+        PendingSubscribe(PubSubMessageHandler handler) {
+            handlers.add(handler);
+        }
+    }
+
+    /**
+     * Add a handler to a channel's routes.
+     *
+     * @return <tt>true</tt> if it is the channel's first handler
+     */
+    private boolean addRoute(String channel, PubSubMessageHandler handler) {
+        while (true) {
+            PubSubMessageHandler[] current = routes.get(channel);
+
+            if (current == null) {
+                if (routes.putIfAbsent(channel, new PubSubMessageHandler[] {handler}) == null) {
+                    return true;
+                }
+            } else {
+                PubSubMessageHandler[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = handler;
+
+                if (routes.replace(channel, current, next)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a handler from a channel's routes.
+     *
+     * @return <tt>true</tt> if it was the channel's last handler
+     */
+    private boolean removeRoute(String channel, PubSubMessageHandler handler) {
+        while (true) {
+            PubSubMessageHandler[] current = routes.get(channel);
+            int index = current == null ? -1 : Arrays.asList(current).indexOf(handler);
+
+            if (index < 0) {
+                return false;
+            }
+
+            if (current.length == 1) {
+                if (routes.remove(channel, current)) {
+                    return true;
+                }
+            } else {
+                PubSubMessageHandler[] next = new PubSubMessageHandler[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, next.length - index);
+
+                if (routes.replace(channel, current, next)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a subscribe or unsubscribe request.
+     */
+    private ListenableFuture<List<String>> control(String action, String channel) {
+        SettableFuture<List<String>> response = SettableFuture.create();
+        WebSocket ws = webSocket;
+
+        if (ws == null || done.get()) {
+            response.setException(new CogsPubSubException("Not connected."));
+            return response;
+        }
+
+        long seq = sequence.incrementAndGet();
+
+        JSONObject request = new JSONObject();
+        try {
+            request.put("seq", seq);
+            request.put("action", action);
+            request.put("channel", channel);
+        } catch (JSONException e) {
+            response.setException(new CogsPubSubException("Error assembling " + action + " request: " + e.getMessage()));
+            return response;
+        }
+
+        pendingControl.put(seq, response);
+
+        try {
+            sendFrame(ws, request.toString());
+        } catch (Throwable error) {
+            Log.e("Cogs-SDK", "Error sending " + action + " request.", error);
+
+            if (pendingControl.remove(seq) != null) {
+                response.setException(error);
+            }
+        }
+
+        return response;
+    }
 }
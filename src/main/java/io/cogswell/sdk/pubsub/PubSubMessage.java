@@ -0,0 +1,52 @@
+package io.cogswell.sdk.pubsub;
+
+import io.cogswell.sdk.json.JsonNode;
+
+/**
+ * A message published to a channel this handle is subscribed to.
+ */
+public class PubSubMessage {
+    private final String id;
+    private final String timestamp;
+    private final String channel;
+    private final String message;
+
+    PubSubMessage(JsonNode json) {
+        this.id = json.str("id");
+        this.timestamp = json.str("time");
+        this.channel = json.str("chan");
+        this.message = json.str("msg");
+    }
+
+    /**
+     * @return the id the server assigned the message
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the time the message was published, in ISO-8601 format
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "PubSubMessage{" +
+                "id='" + id + '\'' +
+                ", timestamp='" + timestamp + '\'' +
+                ", channel='" + channel + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package io.cogswell.sdk.pubsub;
+
+/**
+ * Receives the messages of a channel subscription. It is called on the WebSocket's I/O
+ * thread, in the order messages arrive, so it should hand lengthy work off elsewhere.
+ */
+public interface PubSubMessageHandler {
+    void onMessage(PubSubMessage message);
+}
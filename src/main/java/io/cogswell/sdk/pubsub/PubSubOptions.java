@@ -3,9 +3,29 @@ package io.cogswell.sdk.pubsub;
 import android.net.Uri;
 
 public class PubSubOptions {
+    /**
+     * What {@link PubSubHandle#publish(String, String)} does when the publish window is full.
+     */
+    public enum WindowFullPolicy {
+        /**
+         * Block the publishing thread until an acknowledgement slides the window. Publishes
+         * from the AndroidAsync reactor thread are queued instead, since that thread reads
+         * the acknowledgements which slide the window.
+         */
+        BLOCK,
+
+        /**
+         * Return at once, and send the publish, in order, when the window slides.
+         */
+        QUEUE
+    }
+
     boolean autoReconnect;
     long connectTimeout;
     Uri uri;
+    int publishWindow = 0;
+    WindowFullPolicy windowFullPolicy = WindowFullPolicy.QUEUE;
+    PublishBatcher.Builder publishBatching = null;
 
     public PubSubOptions (String url) {
         this(url, true, 30000);
@@ -21,5 +41,40 @@ public class PubSubOptions {
         this.connectTimeout = connectTimeout;
     }
 
+    /**
+     * Limit the number of publishes awaiting acknowledgement. Publishes are pipelined up to
+     * the window, so throughput is about window / round trip time.
+     *
+     * @param window the maximum number of publishes in flight, or 0 for no limit
+     * @param policy what to do with a publish when the window is full
+     *
+     * @return these options
+     */
+    public PubSubOptions withPublishWindow(int window, WindowFullPolicy policy) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Publish window must not be negative.");
+        }
+
+        this.publishWindow = window;
+        this.windowFullPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Coalesce publishes to the same channel into multi-message frames. Each message is still
+     * acknowledged on its own.
+     *
+     * Only enable this against a server which accepts a JSON array of publish requests in one
+     * frame; the current Pub/Sub service does not, and would reject every batched publish.
+     *
+     * @param batching the {@link PublishBatcher.Builder builder} describing the frame size and linger bounds, or null to send each publish in its own frame
+     *
+     * @return these options
+     */
+    public PubSubOptions withPublishBatching(PublishBatcher.Builder batching) {
+        this.publishBatching = batching;
+        return this;
+    }
+
     public static PubSubOptions defaultOptions = new PubSubOptions("wss://api.cogswell.io/pubsub");
 }
@@ -0,0 +1,166 @@
+package io.cogswell.sdk.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Coalesces publishes to the same channel into multi-message frames.
+ *
+ * A frame is a JSON array of ordinary publish requests, each with its own sequence number,
+ * so each message is still acknowledged, and its future completed, on its own. A channel's
+ * batch is sent as soon as adding a message would take it past the maximum batch bytes, or
+ * once its oldest message has waited for the linger interval.
+ *
+ * Multi-message frames require server support: the current Pub/Sub service accepts only one
+ * request per frame, so batching is off unless enabled with
+ * {@link PubSubOptions#withPublishBatching(Builder)}, and must only be enabled against a
+ * server which accepts JSON array frames.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class PublishBatcher {
+    /**
+     * The JSON envelope of one publish request, less its channel and message.
+     */
+    private static final int ENVELOPE_BYTES = 64;
+
+    /**
+     * Sends a batch of publishes to one channel as a single frame.
+     */
+    interface Sink {
+        void send(List<PubSubHandle.Publish> batch);
+    }
+
+    private final int maxBatchBytes;
+    private final long lingerMillis;
+    private final Sink sink;
+
+    /**
+     * Batches being filled, by channel. Batches are also sent under this lock, so that a
+     * channel's batches reach the sink in the order they were filled.
+     */
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    private PublishBatcher(Builder builder, Sink sink) {
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.lingerMillis = builder.lingerMillis;
+        this.sink = sink;
+    }
+
+    /**
+     * Queue a publish for sending in its channel's next batch.
+     *
+     * @param publish the publish
+     */
+    void submit(PubSubHandle.Publish publish) {
+        int size = publish.channel.length() + publish.message.length() + ENVELOPE_BYTES;
+
+        synchronized (pending) {
+            Batch batch = pending.get(publish.channel);
+
+            if (batch != null && batch.bytes + size > maxBatchBytes) {
+                pending.remove(publish.channel);
+                sink.send(batch.publishes);
+                batch = null;
+            }
+
+            if (batch == null) {
+                batch = new Batch();
+                pending.put(publish.channel, batch);
+                scheduleLinger(publish.channel, batch);
+            }
+
+            batch.publishes.add(publish);
+            batch.bytes += size;
+        }
+    }
+
+    /**
+     * Send every pending batch immediately.
+     */
+    public void flush() {
+        synchronized (pending) {
+            List<Batch> batches = new ArrayList<>(pending.values());
+            pending.clear();
+
+            for (Batch batch : batches) {
+                sink.send(batch.publishes);
+            }
+        }
+    }
+
+    private void scheduleLinger(final String channel, final Batch batch) {
+        GambitSDKService.getInstance().schedule(lingerMillis, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (pending) {
+                    if (pending.get(channel) == batch) {
+                        pending.remove(channel);
+                        sink.send(batch.publishes);
+                    }
+                }
+            }
+        });
+    }
+
+    private static class Batch {
+        final List<PubSubHandle.Publish> publishes = new ArrayList<>();
+        int bytes = 0;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxBatchBytes = 16 * 1024;
+        private long lingerMillis = 20;
+
+        private Builder() {}
+
+        /**
+         * @param maxBatchBytes the maximum approximate size of one frame; a larger message is sent in a frame of its own
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxBatchBytes(int maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * @param linger the maximum time a message waits for its batch to fill
+         * @param unit the {@link TimeUnit units} of the linger interval
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withLinger(long linger, TimeUnit unit) {
+            this.lingerMillis = unit.toMillis(linger);
+            return this;
+        }
+
+        /**
+         * Build the {@link PublishBatcher batcher}, validating the configuration.
+         *
+         * @param sink the {@link Sink sink} which sends each batch
+         *
+         * @return the new {@link PublishBatcher batcher}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        PublishBatcher build(Sink sink) {
+            if (maxBatchBytes < 1)
+                throw new CogsBuilderException("Max batch bytes must be positive.");
+            if (lingerMillis < 0)
+                throw new CogsBuilderException("Linger must not be negative.");
+
+            return new PublishBatcher(this, sink);
+        }
+    }
+}
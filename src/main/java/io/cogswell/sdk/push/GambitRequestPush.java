@@ -11,7 +11,6 @@ import okhttp3.Request;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -352,16 +351,16 @@ public class GambitRequestPush extends GambitRequest {
         String payloadData = payload.toString();
         mPayloadData = payloadData;
 
+        byte[] payloadBytes = payloadData.getBytes(Methods.UTF_8);
+
         try {
-            mSignature = Methods.getHmac(payloadData, builder.getClientSecret());
+            mSignature = Methods.getHmac(payloadBytes, builder.getClientSecret());
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
         } catch (InvalidKeyException e) {
             e.printStackTrace();
         }
-        mPayload = Methods._printBase64Binary(payloadData.getBytes());
+        mPayload = Methods._printBase64Binary(payloadBytes);
 
 
 
@@ -443,6 +442,17 @@ public class GambitRequestPush extends GambitRequest {
         return new GambitResponsePush(response, code);
     }
 
+    /**
+     * Build {@link GambitResponsePush} instance straight from the response bytes, parsing only its status.
+     * @param response The RAW HTTP response body as UTF-8 bytes
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponsePush}
+     */
+    @Override
+    protected GambitResponse getResponse(byte[] response, int code) {
+        return new GambitResponsePush(response, code);
+    }
+
     /**
      * Obtained through Gambit UI (public key)
      *
@@ -5,7 +5,6 @@ import android.util.Log;
 import io.cogswell.sdk.GambitResponse;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
@@ -27,28 +26,19 @@ public class GambitResponsePush extends GambitResponse {
     public GambitResponsePush(String response, int code) {
         super(response, code);
 
-        //Log.d("responseCode", String.valueOf(response));
-        if (isSuccess()) {
-            if (mJson.has("message")) {
-                try {
-                    mMessage = mJson.getString("message");
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                //not good at all
-
-                mIsSuccess = false;
-                mErrorCode = "UNKNOWN";
-                mErrorDetails = "Unknown response: "+response;
-            }
-        } else if (mJson.has("error_message")) {
-            try {
-                mMessage = mJson.getString("error_message");
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
+        mMessage = resolveMessage();
+    }
+
+    /**
+     * Construct the response object using the raw response bytes and response code, without
+     * building the full JSON tree
+     * @param response The raw HTTP response body as UTF-8 bytes
+     * @param code The raw HTTP response code as an integer
+     */
+    public GambitResponsePush(byte[] response, int code) {
+        super(response, code);
+
+        mMessage = resolveMessage();
     }
 
     /**
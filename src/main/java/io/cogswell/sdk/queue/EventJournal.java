@@ -0,0 +1,351 @@
+package io.cogswell.sdk.queue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, segmented journal of opaque records, backed by memory-mapped files.
+ *
+ * Each segment is a fixed-size file holding records laid out as
+ * <code>[int length][int crc32][payload]</code>; a zero length marks the end of the segment's
+ * data. Appends only write into the mapped buffer, and nothing is forced to disk until
+ * {@link #commit()} is called, so many appends share one fsync (group commit).
+ *
+ * There is a single reader: {@link #peek()} returns the oldest unacknowledged record and
+ * {@link #ack(Entry)} moves past it. The read cursor is persisted in a small side file, so delivery
+ * after a crash is at-least-once. Segments which have been read completely are deleted
+ * (compacted) as the cursor leaves them. When the disk budget would be exceeded, the oldest
+ * segment is discarded to make room. That may happen while the reader holds a peeked entry,
+ * so each {@link Entry} remembers where it was read from, and acknowledging an entry which has
+ * since been discarded does nothing.
+ *
+ * Only the segments currently being read and written are kept mapped. Recovery does not
+ * scan the queued records at all: it restores the cursor and resumes appends in a fresh
+ * segment, so reopening a journal costs the same regardless of how many records are queued.
+ */
+public class EventJournal implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int HEADER_BYTES = 8;
+    private static final int CURSOR_BYTES = 12;
+
+    /**
+     * A record returned by {@link #peek()}, along with its position in the journal.
+     */
+    public static final class Entry {
+        private final long segment;
+        private final int position;
+        private final byte[] record;
+
+        private Entry(long segment, int position, byte[] record) {
+            this.segment = segment;
+            this.position = position;
+            this.record = record;
+        }
+
+        /**
+         * @return the record payload
+         */
+        public byte[] getRecord() {
+            return record;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    // Segment id to its mapping; unmapped (null) for segments which are neither being read nor written.
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer cursor;
+
+    private long writeSegment;
+    private int writePosition;
+
+    private long readSegment;
+    private int readPosition;
+
+    private boolean dirty = false;
+    private long droppedSegments = 0;
+
+    /**
+     * Open (or create) a journal in the specified directory.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentBytes the size of each segment file
+     * @param maxBytes the disk budget for all segments combined
+     *
+     * @throws IOException if the journal cannot be opened
+     */
+    public EventJournal(File directory, int segmentBytes, long maxBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES)
+            throw new IllegalArgumentException("Segment size is too small.");
+        if (maxBytes < 2L * segmentBytes)
+            throw new IllegalArgumentException("The disk budget must hold at least two segments.");
+
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create journal directory " + directory);
+
+        recover();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(id, null);
+                    } catch (NumberFormatException e) {
+                        // Not one of ours.
+                    }
+                }
+            }
+        }
+
+        cursor = map(new File(directory, CURSOR_FILE), CURSOR_BYTES);
+        readSegment = cursor.getLong(0);
+        readPosition = cursor.getInt(8);
+
+        if (!segments.containsKey(readSegment)) {
+            readSegment = segments.isEmpty() ? 0 : segments.firstKey();
+            readPosition = 0;
+        }
+
+        // Drop anything older than the cursor; it has already been delivered.
+        while (!segments.isEmpty() && segments.firstKey() < readSegment) {
+            delete(segments.firstKey());
+        }
+
+        // Appends always resume in a fresh segment, so a torn record at the tail of the
+        // previous one can never be followed by newer data.
+        writeSegment = segments.isEmpty() ? readSegment : segments.lastKey() + 1;
+        openSegment(writeSegment);
+        writePosition = 0;
+    }
+
+    /**
+     * Append a record. The record is visible to the reader immediately but is only durable
+     * once {@link #commit()} has been called.
+     *
+     * @param record the record payload
+     *
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void append(byte[] record) throws IOException {
+        int needed = HEADER_BYTES + record.length;
+
+        if (needed > segmentBytes)
+            throw new IOException("Record of " + record.length + " bytes does not fit in a segment.");
+
+        if (writePosition + needed > segmentBytes) {
+            roll();
+        }
+
+        MappedByteBuffer buffer = buffer(writeSegment);
+
+        crc.reset();
+        crc.update(record, 0, record.length);
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(writePosition + HEADER_BYTES);
+        view.put(record);
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        // The length goes last so that a partially written record reads as the end of data.
+        buffer.putInt(writePosition, record.length);
+
+        writePosition += needed;
+        dirty = true;
+    }
+
+    /**
+     * Fetch the oldest unacknowledged record without consuming it.
+     *
+     * @return the {@link Entry entry} holding the record, or <tt>null</tt> if the journal is empty
+     */
+    public synchronized Entry peek() {
+        while (true) {
+            if (readSegment == writeSegment && readPosition >= writePosition) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = buffer(readSegment);
+
+            int length = readPosition + HEADER_BYTES <= segmentBytes ? buffer.getInt(readPosition) : 0;
+
+            if (length > 0 && readPosition + HEADER_BYTES + length <= segmentBytes) {
+                byte[] record = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(readPosition + HEADER_BYTES);
+                view.get(record);
+
+                crc.reset();
+                crc.update(record, 0, length);
+
+                if ((int) crc.getValue() == buffer.getInt(readPosition + 4)) {
+                    return new Entry(readSegment, readPosition, record);
+                }
+            }
+
+            // End of this segment's data (or a torn record); move on to the next segment.
+            if (readSegment == writeSegment) {
+                return null;
+            }
+
+            long finished = readSegment;
+            readSegment = segments.higherKey(finished);
+            readPosition = 0;
+            saveCursor();
+            delete(finished);
+        }
+    }
+
+    /**
+     * Consume a record returned by {@link #peek()}. If the record is no longer at the head of
+     * the journal, because it was already acknowledged or its segment was discarded to stay
+     * within the disk budget, nothing happens.
+     *
+     * @param entry the {@link Entry entry} returned by {@link #peek()}
+     *
+     * @return <tt>true</tt> if the record was consumed by this call
+     */
+    public synchronized boolean ack(Entry entry) {
+        if (entry.segment != readSegment || entry.position != readPosition) {
+            return false;
+        }
+
+        readPosition += HEADER_BYTES + entry.record.length;
+        saveCursor();
+        return true;
+    }
+
+    /**
+     * @return <tt>true</tt> if there are no unacknowledged records
+     */
+    public synchronized boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * Force all appended records and the read cursor to disk.
+     */
+    public synchronized void commit() {
+        if (dirty) {
+            buffer(writeSegment).force();
+            cursor.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * @return the number of unread segments discarded to stay within the disk budget
+     */
+    public synchronized long getDroppedSegments() {
+        return droppedSegments;
+    }
+
+    /**
+     * @return the number of bytes currently allocated to segment files
+     */
+    public synchronized long getDiskUsage() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        commit();
+        segments.clear();
+    }
+
+    private void roll() throws IOException {
+        while ((long) (segments.size() + 1) * segmentBytes > maxBytes && segments.firstKey() < writeSegment) {
+            long oldest = segments.firstKey();
+
+            if (oldest == readSegment) {
+                readSegment = segments.higherKey(oldest);
+                readPosition = 0;
+                saveCursor();
+            }
+
+            delete(oldest);
+            droppedSegments++;
+        }
+
+        buffer(writeSegment).force();
+
+        if (writeSegment != readSegment) {
+            segments.put(writeSegment, null);
+        }
+
+        writeSegment++;
+        writePosition = 0;
+        openSegment(writeSegment);
+    }
+
+    private void saveCursor() {
+        cursor.putLong(0, readSegment);
+        cursor.putInt(8, readPosition);
+        dirty = true;
+    }
+
+    private void openSegment(long id) throws IOException {
+        if (segments.get(id) == null) {
+            segments.put(id, map(segmentFile(id), segmentBytes));
+        }
+    }
+
+    private MappedByteBuffer buffer(long id) {
+        MappedByteBuffer buffer = segments.get(id);
+
+        if (buffer == null) {
+            try {
+                buffer = map(segmentFile(id), segmentBytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map journal segment " + id, e);
+            }
+            segments.put(id, buffer);
+        }
+
+        return buffer;
+    }
+
+    private void delete(long id) {
+        segments.remove(id);
+        segmentFile(id).delete();
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.cogswell.sdk.request;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.GambitRequest;
+import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+import io.cogswell.sdk.response.GambitResponseEvent;
+
+/**
+ * Collects built {@link GambitRequestEvent}s into size- and time-bounded batches and
+ * sends each batch in a single request.
+ *
+ * Events are grouped by their credentials, since a batch is signed as a whole. A batch is
+ * sent as soon as it reaches the maximum event count or byte size, or once the oldest event
+ * in it has waited for the linger interval. If the server does not offer the batch route
+ * (404, 405 or 501), the batcher falls back to sending each event individually from then on.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class GambitEventBatcher {
+    /**
+     * Sends a request, either a batch or a single event.
+     */
+    interface Sink {
+        ListenableFuture<GambitResponse> send(GambitRequest request);
+    }
+
+    private static final Sink ENQUEUE = new Sink() {
+        @Override
+        public ListenableFuture<GambitResponse> send(GambitRequest request) {
+            return request.enqueue();
+        }
+    };
+
+    private final int maxBatchSize;
+    private final int maxBatchBytes;
+    private final long lingerMillis;
+    private final Sink sink;
+
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    private volatile boolean batchRouteAvailable = true;
+
+    private GambitEventBatcher(Builder builder, Sink sink) {
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.lingerMillis = builder.lingerMillis;
+        this.sink = sink;
+    }
+
+    /**
+     * Queue an event for sending in the next batch.
+     *
+     * @param event the event to send
+     *
+     * @return a future which completes with this event's own response
+     */
+    public ListenableFuture<GambitResponse> submit(GambitRequestEvent event) {
+        SettableFuture<GambitResponse> future = SettableFuture.create();
+
+        if (!batchRouteAvailable) {
+            sendIndividually(event, future);
+            return future;
+        }
+
+        String key = event.getAccessKey() + ":" + event.getClientSalt() + ":" + event.getClientSecret();
+        int size = event.getSignedBody().length();
+        List<Batch> ready = new ArrayList<>(2);
+
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+
+            if (batch != null && batch.bytes + size > maxBatchBytes) {
+                pending.remove(key);
+                ready.add(batch);
+                batch = null;
+            }
+
+            if (batch == null) {
+                batch = new Batch();
+                pending.put(key, batch);
+                scheduleLinger(key, batch);
+            }
+
+            batch.events.add(event);
+            batch.futures.add(future);
+            batch.bytes += size;
+
+            if (batch.events.size() >= maxBatchSize) {
+                pending.remove(key);
+                ready.add(batch);
+            }
+        }
+
+        for (Batch batch : ready) {
+            send(batch);
+        }
+
+        return future;
+    }
+
+    /**
+     * Send every pending batch immediately.
+     */
+    public void flush() {
+        List<Batch> batches;
+
+        synchronized (pending) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        for (Batch batch : batches) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Indicates whether the batch route is in use, or whether events are being sent individually.
+     *
+     * @return <tt>false</tt> once the server has rejected the batch route
+     */
+    public boolean isBatchRouteAvailable() {
+        return batchRouteAvailable;
+    }
+
+    private void scheduleLinger(final String key, final Batch batch) {
+        GambitSDKService.getInstance().schedule(lingerMillis, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                boolean expired;
+
+                synchronized (pending) {
+                    expired = pending.get(key) == batch;
+
+                    if (expired) {
+                        pending.remove(key);
+                    }
+                }
+
+                if (expired) {
+                    send(batch);
+                }
+            }
+        });
+    }
+
+    private void send(final Batch batch) {
+        if (!batchRouteAvailable) {
+            for (int i = 0; i < batch.events.size(); i++) {
+                sendIndividually(batch.events.get(i), batch.futures.get(i));
+            }
+            return;
+        }
+
+        Futures.addCallback(sink.send(new GambitRequestEventBatch(batch.events)), new FutureCallback<GambitResponse>() {
+            @Override
+            public void onSuccess(GambitResponse response) {
+                int code = response.getRawCode();
+
+                if (code == 404 || code == 405 || code == 501) {
+                    Log.w("Cogs-SDK", "Batch event route unavailable (" + code + "); sending events individually.");
+                    batchRouteAvailable = false;
+                    send(batch);
+                } else {
+                    complete(batch, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                for (SettableFuture<GambitResponse> future : batch.futures) {
+                    future.setException(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void complete(Batch batch, GambitResponse response) {
+        JSONObject json = response.getObject();
+        JSONArray results = json == null ? null : json.optJSONArray("results");
+
+        for (int i = 0; i < batch.futures.size(); i++) {
+            JSONObject result = results == null ? null : results.optJSONObject(i);
+
+            if (result != null) {
+                batch.futures.get(i).set(new GambitResponseEvent(result.toString(), response.getRawCode()));
+            } else {
+                batch.futures.get(i).set(response);
+            }
+        }
+    }
+
+    private void sendIndividually(GambitRequestEvent event, SettableFuture<GambitResponse> future) {
+        future.setFuture(sink.send(event));
+    }
+
+    private static class Batch {
+        final List<GambitRequestEvent> events = new ArrayList<>();
+        final List<SettableFuture<GambitResponse>> futures = new ArrayList<>();
+        int bytes = 0;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxBatchSize = 100;
+        private int maxBatchBytes = 256 * 1024;
+        private long lingerMillis = 250;
+
+        private Builder() {}
+
+        /**
+         * @param maxBatchSize the maximum number of events sent in one request
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param maxBatchBytes the maximum combined size, in UTF-8 bytes, of the event bodies sent in one request
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxBatchBytes(int maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * @param linger the maximum time an event waits for its batch to fill
+         * @param unit the {@link TimeUnit units} of the linger interval
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withLinger(long linger, TimeUnit unit) {
+            this.lingerMillis = unit.toMillis(linger);
+            return this;
+        }
+
+        /**
+         * Build the {@link GambitEventBatcher batcher}, validating the configuration.
+         *
+         * @return the new {@link GambitEventBatcher batcher}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public GambitEventBatcher build() {
+            return build(ENQUEUE);
+        }
+
+        /**
+         * Build the {@link GambitEventBatcher batcher} around the given sink.
+         *
+         * @param sink the {@link Sink sink} which sends each request
+         *
+         * @return the new {@link GambitEventBatcher batcher}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        GambitEventBatcher build(Sink sink) {
+            if (maxBatchSize < 1)
+                throw new CogsBuilderException("Max batch size must be positive.");
+            if (maxBatchBytes < 1)
+                throw new CogsBuilderException("Max batch bytes must be positive.");
+            if (lingerMillis < 0)
+                throw new CogsBuilderException("Linger must not be negative.");
+
+            return new GambitEventBatcher(this, sink);
+        }
+    }
+}
@@ -4,9 +4,11 @@ import android.util.Log;
 
 import io.cogswell.sdk.GambitRequest;
 import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.JsonBodyWriter;
 import io.cogswell.sdk.Methods;
 import io.cogswell.sdk.response.GambitResponseEvent;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,6 +21,8 @@ import java.util.LinkedHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.crypto.Mac;
+
 /**
  *
  * @author iganev
@@ -349,6 +353,11 @@ public class GambitRequestEvent extends GambitRequest {
      */
     protected String mBody;
 
+    /**
+     * Generated request body as signed UTF-8 bytes
+     */
+    protected JsonBodyWriter mSignedBody;
+
     /**
      * Obtained through GambitToolsSDK
      */
@@ -464,61 +473,91 @@ public class GambitRequestEvent extends GambitRequest {
     }
 
     /**
-     * Build a JSON according to specification. This is the actual request body.
-     * @return JSON string representation of all needed request parameters
+     * Serialize and sign the request body in a single pass. The result is cached, so the body
+     * is only ever serialized once for this request.
+     * @return The writer holding the UTF-8 encoded body and its signature
      */
-    @Override
-    protected String getBody() {
-
-        if (mBody == null) {
-            JSONObject json = new JSONObject();
+    protected JsonBodyWriter getSignedBody() {
+        if (mSignedBody == null) {
+            Mac mac = null;
 
             try {
-                json.put("client_salt", mClientSalt);
+                mac = Methods.getSigner(mClientSecret).mac();
+            } catch (Exception ex) {
+                Logger.getLogger(GambitRequest.class.getName()).log(Level.SEVERE, null, ex);
+            }
+
+            JsonBodyWriter writer = new JsonBodyWriter(256, mac);
 
-                json.put("access_key", mAccessKey);
-                json.put("event_name", mEventName);
-                json.put("timestamp", mTimestamp);
-                json.put("namespace", mNamespace);
-                json.put("attributes", mAttributes);
+            try {
+                writer.beginObject()
+                        .name("client_salt").value(mClientSalt)
+                        .name("access_key").value(mAccessKey)
+                        .name("event_name").value(mEventName)
+                        .name("timestamp").value(mTimestamp)
+                        .name("namespace").value(mNamespace)
+                        .name("attributes").value((Object) mAttributes);
 
                 if (mCampaignId > 0) {
-                    json.put("campaign_id", mCampaignId);
+                    writer.name("campaign_id").value(mCampaignId);
                 }
 
                 if (mTags != null && !mTags.isEmpty()) {
-                    json.put("tags", mTags);
+                    writer.name("tags").value((Object) mTags);
                 }
 
                 if (mDebugDirective != null && !mDebugDirective.isEmpty()) {
-                    json.put("debug_directive", mDebugDirective);
+                    writer.name("debug_directive").value(mDebugDirective);
                 }
 
                 if (mForwardAsMessage) {
-                    json.put("forward_as_message", true);
+                    writer.name("forward_as_message").value(true);
                 }
+
+                writer.endObject();
             } catch (JSONException e) {
                 e.printStackTrace();
             }
 
-            //Log.d("jsonnew", json.toString());
-            mBody = json.toString();
-            //Log.d("request mBody", mBody);
+            writer.finish();
+            mSignedBody = writer;
+        }
+
+        return mSignedBody;
+    }
+
+    /**
+     * Build a JSON according to specification. This is the actual request body.
+     * @return JSON string representation of all needed request parameters
+     */
+    @Override
+    protected String getBody() {
+        if (mBody == null) {
+            mBody = getSignedBody().toString();
         }
 
         return mBody;
     }
 
+    /**
+     * Hand the serialized bytes to the HTTP client without another copy.
+     * @return The request body
+     */
+    @Override
+    protected RequestBody getRequestBody() {
+        return getSignedBody().toRequestBody(JSON);
+    }
+
     /**
      * Inject the HMAC-SHA256 hash as a header to the request
      * @param requestBuilder The Request.Builder object that is going to build the API call.
      */
     @Override
     protected void setRequestParams(Request.Builder requestBuilder) {
-        try {
-            requestBuilder.header("Payload-HMAC", Methods.getHmac(getBody(), mClientSecret));
-        } catch (Exception ex) {
-            Logger.getLogger(GambitRequest.class.getName()).log(Level.SEVERE, null, ex);
+        String signature = getSignedBody().finish();
+
+        if (signature != null) {
+            requestBuilder.header("Payload-HMAC", signature);
         }
     }
 
@@ -533,6 +572,17 @@ public class GambitRequestEvent extends GambitRequest {
         return new GambitResponseEvent(response, code);
     }
 
+    /**
+     * Build {@link GambitResponseEvent} instance straight from the response bytes, parsing only its status.
+     * @param response The RAW HTTP response body as UTF-8 bytes
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponseEvent}
+     */
+    @Override
+    protected GambitResponse getResponse(byte[] response, int code) {
+        return new GambitResponseEvent(response, code);
+    }
+
     /**
      * Gets the timestamp of the event. Use ISO-8601 format.
      * @return The timestamp of the event.
@@ -0,0 +1,141 @@
+package io.cogswell.sdk.request;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.cogswell.sdk.GambitRequest;
+import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.response.GambitResponseEvent;
+import okhttp3.Request;
+
+/**
+ * Sends several {@link GambitRequestEvent}s, all signed with the same client secret,
+ * in a single POST to the batch event route.
+ *
+ * The body is assembled from the already serialized event bodies, so each event is
+ * only serialized once regardless of whether it is sent in a batch or on its own.
+ */
+public class GambitRequestEventBatch extends GambitRequest {
+
+    protected static final String endpoint = "/event/batch";
+
+    /**
+     * The events in this batch, in submission order
+     */
+    protected final List<GambitRequestEvent> mEvents;
+
+    /**
+     * Obtained through GambitToolsSDK; shared by every event in the batch
+     */
+    protected final String mClientSecret;
+
+    /**
+     * Generated request body
+     */
+    protected String mBody;
+
+    /**
+     * Create a batch request. All events must share the same client secret.
+     * @param events The events to send
+     */
+    public GambitRequestEventBatch(List<GambitRequestEvent> events) {
+        mEvents = events;
+        mClientSecret = events.get(0).getClientSecret();
+    }
+
+    /**
+     * The events carried by this batch
+     * @return The events, in submission order
+     */
+    public List<GambitRequestEvent> getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * Define the HTTP method to use
+     * @return POST
+     */
+    @Override
+    protected String getMethod() {
+        return "POST";
+    }
+
+    /**
+     * Build the request URL to execute the API call upon.
+     * @return Full request {@link URL}
+     */
+    @Override
+    protected URL getUrl() {
+        URL url = null;
+
+        try {
+            url = new URL(getBaseUrl() + endpoint);
+        } catch (MalformedURLException ex) {
+            Logger.getLogger(GambitRequestEventBatch.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        return url;
+    }
+
+    /**
+     * Build the batch body: <code>{"events":[...]}</code> containing each event's own body.
+     * @return JSON string representation of the batch
+     */
+    @Override
+    protected String getBody() {
+        if (mBody == null) {
+            StringBuilder builder = new StringBuilder("{\"events\":[");
+
+            for (int i = 0; i < mEvents.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(mEvents.get(i).getBody());
+            }
+
+            builder.append("]}");
+            mBody = builder.toString();
+        }
+
+        return mBody;
+    }
+
+    /**
+     * Inject the HMAC-SHA256 hash of the whole batch as a header to the request
+     * @param requestBuilder The Request.Builder object that is going to build the API call.
+     */
+    @Override
+    protected void setRequestParams(Request.Builder requestBuilder) {
+        try {
+            requestBuilder.header("Payload-HMAC", Methods.getHmac(getBody(), mClientSecret));
+        } catch (Exception ex) {
+            Logger.getLogger(GambitRequestEventBatch.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Build {@link GambitResponseEvent} instance, containing the result of the whole batch.
+     * @param response The RAW HTTP response body as text
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponseEvent}
+     */
+    @Override
+    protected GambitResponse getResponse(String response, int code) {
+        return new GambitResponseEvent(response, code);
+    }
+
+    /**
+     * Build {@link GambitResponseEvent} instance straight from the response bytes, parsing only its status.
+     * @param response The RAW HTTP response body as UTF-8 bytes
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponseEvent}
+     */
+    @Override
+    protected GambitResponse getResponse(byte[] response, int code) {
+        return new GambitResponseEvent(response, code);
+    }
+}
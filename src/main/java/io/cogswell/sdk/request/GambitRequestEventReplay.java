@@ -0,0 +1,105 @@
+package io.cogswell.sdk.request;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.cogswell.sdk.GambitRequest;
+import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.response.GambitResponseEvent;
+import okhttp3.Request;
+
+/**
+ * Re-sends an event which was serialized and signed earlier, such as one restored from
+ * an {@link OfflineEventQueue}. The client secret is not needed, since the signature was
+ * computed when the event was first queued.
+ */
+public class GambitRequestEventReplay extends GambitRequest {
+
+    /**
+     * The event body, exactly as it was signed
+     */
+    protected final String mBody;
+
+    /**
+     * The HMAC-SHA256 signature of the body
+     */
+    protected final String mSignature;
+
+    /**
+     * Create a replay request
+     * @param body The serialized event body
+     * @param signature The HMAC-SHA256 signature of the body
+     */
+    public GambitRequestEventReplay(String body, String signature) {
+        mBody = body;
+        mSignature = signature;
+    }
+
+    /**
+     * Define the HTTP method to use
+     * @return POST
+     */
+    @Override
+    protected String getMethod() {
+        return "POST";
+    }
+
+    /**
+     * Build the request URL to execute the API call upon.
+     * @return Full request {@link URL}
+     */
+    @Override
+    protected URL getUrl() {
+        URL url = null;
+
+        try {
+            url = new URL(getBaseUrl() + GambitRequestEvent.endpoint);
+        } catch (MalformedURLException ex) {
+            Logger.getLogger(GambitRequestEventReplay.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        return url;
+    }
+
+    /**
+     * The previously serialized event body
+     * @return JSON string representation of the event
+     */
+    @Override
+    protected String getBody() {
+        return mBody;
+    }
+
+    /**
+     * Inject the stored HMAC-SHA256 hash as a header to the request
+     * @param requestBuilder The Request.Builder object that is going to build the API call.
+     */
+    @Override
+    protected void setRequestParams(Request.Builder requestBuilder) {
+        requestBuilder.header("Payload-HMAC", mSignature);
+    }
+
+    /**
+     * Build {@link GambitResponseEvent} instance, containing the result of the request.
+     * @param response The RAW HTTP response body as text
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponseEvent}
+     */
+    @Override
+    protected GambitResponse getResponse(String response, int code) {
+        return new GambitResponseEvent(response, code);
+    }
+
+    /**
+     * Build {@link GambitResponseEvent} instance straight from the response bytes, parsing only its status.
+     * @param response The RAW HTTP response body as UTF-8 bytes
+     * @param code The RAW HTTP response code as an integer
+     * @return An instance of {@link GambitResponseEvent}
+     */
+    @Override
+    protected GambitResponse getResponse(byte[] response, int code) {
+        return new GambitResponseEvent(response, code);
+    }
+}
@@ -0,0 +1,274 @@
+package io.cogswell.sdk.request;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.ConnectivityMonitor;
+import io.cogswell.sdk.GambitResponse;
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+import io.cogswell.sdk.queue.EventJournal;
+
+/**
+ * A persistent outbound queue for {@link GambitRequestEvent}s.
+ *
+ * Each event is serialized and signed when it is queued, then appended to an
+ * {@link EventJournal} on disk, so queued events survive process death. The queue drains in
+ * order, one event at a time, whenever the {@link GambitSDKService#getConnectivityMonitor()
+ * connectivity monitor} reports that the device is connected. Events rejected by the server
+ * with a 4xx response are dropped; network failures and 5xx responses leave the event at the
+ * head of the queue to be retried.
+ *
+ * The journal is forced to disk on a fixed interval rather than on every event.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class OfflineEventQueue implements Closeable, ConnectivityMonitor.Listener {
+    private final EventJournal journal;
+    private final ConnectivityMonitor connectivity;
+    private final long retryMillis;
+    private final ScheduledFuture<?> committer;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private OfflineEventQueue(Builder builder) throws IOException {
+        journal = new EventJournal(builder.directory, builder.segmentBytes, builder.maxBytes);
+        retryMillis = builder.retryMillis;
+
+        GambitSDKService service = GambitSDKService.getInstance();
+        connectivity = service.getConnectivityMonitor();
+        connectivity.addListener(this);
+
+        committer = service.scheduleAtFixedRate(builder.commitMillis, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                journal.commit();
+            }
+        });
+
+        drain();
+    }
+
+    /**
+     * Queue an event. It will be sent as soon as every event queued before it has been sent
+     * and the device is connected.
+     *
+     * @param event the event to send
+     *
+     * @throws IOException if the event could not be signed or written to the journal
+     */
+    public void enqueue(GambitRequestEvent event) throws IOException {
+        String body = event.getBody();
+        String signature = event.getSignedBody().finish();
+
+        if (signature == null) {
+            throw new IOException("Error signing event.");
+        }
+
+        journal.append((signature + "\n" + body).getBytes(Methods.UTF_8));
+        drain();
+    }
+
+    /**
+     * Start sending queued events, unless the device is offline or the queue is already draining.
+     */
+    public void drain() {
+        if (connectivity.isConnected() && draining.compareAndSet(false, true)) {
+            sendNext();
+        }
+    }
+
+    /**
+     * Force all queued events to disk now, rather than waiting for the next group commit.
+     */
+    public void commit() {
+        journal.commit();
+    }
+
+    /**
+     * @return the number of events delivered from this queue
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of events dropped because the server rejected them
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return <tt>true</tt> if no events are waiting to be sent
+     */
+    public boolean isEmpty() {
+        return journal.isEmpty();
+    }
+
+    @Override
+    public void connectivityChanged(boolean connected) {
+        if (connected) {
+            drain();
+        }
+    }
+
+    @Override
+    public void close() {
+        connectivity.removeListener(this);
+        committer.cancel(false);
+        journal.close();
+    }
+
+    private void sendNext() {
+        final EventJournal.Entry entry = journal.peek();
+
+        if (entry == null) {
+            draining.set(false);
+
+            // An event may have been appended after the peek, but before the flag was cleared.
+            if (!journal.isEmpty()) {
+                drain();
+            }
+            return;
+        }
+
+        String record = new String(entry.getRecord(), Methods.UTF_8);
+        int split = record.indexOf('\n');
+        GambitRequestEventReplay request = new GambitRequestEventReplay(record.substring(split + 1), record.substring(0, split));
+
+        Futures.addCallback(request.enqueue(), new FutureCallback<GambitResponse>() {
+            @Override
+            public void onSuccess(GambitResponse response) {
+                int code = response.getRawCode();
+
+                if (code >= 500 || code == 429) {
+                    retryLater("Server responded " + code, null);
+                    return;
+                }
+
+                if (code >= 400) {
+                    Log.w("Cogs-SDK", "Dropping queued event rejected with " + code + ": " + response.getRawBody());
+                    droppedCount.incrementAndGet();
+                } else {
+                    sentCount.incrementAndGet();
+                }
+
+                // The event may have been discarded to stay within the disk budget while it was
+                // in flight, in which case there is nothing left to acknowledge.
+                journal.ack(entry);
+                sendNext();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                retryLater("Error sending queued event", t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void retryLater(String reason, Throwable error) {
+        Log.w("Cogs-SDK", reason + "; retrying in " + retryMillis + " ms.", error);
+        draining.set(false);
+
+        GambitSDKService.getInstance().schedule(retryMillis, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    public static Builder builder(File directory) {
+        return new Builder(directory);
+    }
+
+    public static class Builder {
+        private final File directory;
+        private int segmentBytes = 1024 * 1024;
+        private long maxBytes = 16L * 1024 * 1024;
+        private long commitMillis = 1000;
+        private long retryMillis = 30000;
+
+        private Builder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @param segmentBytes the size of each journal segment file
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withSegmentBytes(int segmentBytes) {
+            this.segmentBytes = segmentBytes;
+            return this;
+        }
+
+        /**
+         * @param maxBytes the disk budget; once reached, the oldest queued events are discarded
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param interval how often queued events are forced to disk
+         * @param unit the {@link TimeUnit units} of the interval
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withCommitInterval(long interval, TimeUnit unit) {
+            this.commitMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * @param delay how long to wait before retrying after a failed send
+         * @param unit the {@link TimeUnit units} of the delay
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withRetryDelay(long delay, TimeUnit unit) {
+            this.retryMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Open the queue, recovering any events left from a previous process.
+         *
+         * @return the {@link OfflineEventQueue queue}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         * @throws IOException if the journal cannot be opened
+         */
+        public OfflineEventQueue build() throws IOException {
+            if (directory == null)
+                throw new CogsBuilderException("Directory must not be null.");
+            if (segmentBytes < 1024)
+                throw new CogsBuilderException("Segment size must be at least 1024 bytes.");
+            if (maxBytes < 2L * segmentBytes)
+                throw new CogsBuilderException("Max bytes must allow for at least two segments.");
+            if (commitMillis < 1 || retryMillis < 1)
+                throw new CogsBuilderException("Intervals must be positive.");
+
+            return new OfflineEventQueue(this);
+        }
+    }
+}
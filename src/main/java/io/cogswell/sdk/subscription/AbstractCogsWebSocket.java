@@ -0,0 +1,283 @@
+package io.cogswell.sdk.subscription;
+
+import android.util.Log;
+
+import com.koushikdutta.async.http.Headers;
+import com.koushikdutta.async.http.WebSocket;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.ReconnectPolicy;
+import io.cogswell.sdk.exceptions.CogsSubscriptionException;
+
+/**
+ * Ties a WebSocket to a subscription, and keeps it connected until it is stopped. The
+ * connection itself is managed by {@link PushConnection}; a connect which completes after
+ * {@link #stop(Callback)} closes its WebSocket straight away, and the state ends at
+ * {@link State#CLOSED}.
+ *
+ * When a {@link ResumeMarkerStore} is configured, the id of each message is saved to it once
+ * the handler returns, and every connect sends the saved id as last_message_id, so a reconnect
+ * resumes after the last message this client processed rather than wherever the push route
+ * last recorded acknowledgements. Stopping the WebSocket removes the saved id.
+ */
+public abstract class AbstractCogsWebSocket extends PushConnection {
+
+    /**
+     * The lifecycle of the connection.
+     */
+    public enum State {
+        /**
+         * Created, and not yet started.
+         */
+        IDLE,
+
+        /**
+         * A connect is in flight.
+         */
+        CONNECTING,
+
+        /**
+         * Connected.
+         */
+        OPEN,
+
+        /**
+         * Waiting for the {@link ReconnectPolicy} before the next connect.
+         */
+        BACKOFF,
+
+        /**
+         * Being stopped.
+         */
+        CLOSING,
+
+        /**
+         * Stopped. This state is final.
+         */
+        CLOSED
+    }
+
+    // Easier than null checks... (see currentHandler() method)
+    private static CogsSubscriptionHandler stubHandler = new CogsSubscriptionHandler() {
+        @Override public void error(Throwable error) { }
+        @Override public void connected() { }
+        @Override public void message(CogsMessage message) { }
+        @Override public void closed(Throwable error) { }
+        @Override public void replaced() { }
+    };
+
+    private final CogsSubscriptionRequest request;
+    private volatile CogsSubscriptionHandler handler;
+
+    // Orders handler replacement against stop(), so no handler is installed once stopping.
+    private final Object handlerLock = new Object();
+
+    private final MessageDispatcher dispatcher;
+
+    AbstractCogsWebSocket(CogsSubscriptionRequest request) {
+        this.request = request;
+        this.dispatcher = GambitSDKService.getInstance().newMessageDispatcher(new MessageDispatcher.Receiver() {
+            @Override
+            public void message(CogsMessage message) {
+                deliver(message, currentHandler(), request.getSubscription());
+            }
+        });
+    }
+
+    /**
+     * @return the value of the Host header
+     */
+    protected abstract String getHost();
+
+    private CogsSubscriptionHandler currentHandler() {
+        CogsSubscriptionHandler h = handler;
+        return h == null ? stubHandler : h;
+    }
+
+    /**
+     * Replace the handler of this subscription WebSocket, unless it is being stopped.
+     *
+     * @param handler the new {@link CogsSubscriptionHandler handler}
+     *
+     * @return <tt>false</tt> if the WebSocket is stopping or stopped, in which case the handler is not installed
+     */
+    public boolean replaceHandler(CogsSubscriptionHandler handler) {
+        CogsSubscriptionHandler oldHandler;
+
+        synchronized (handlerLock) {
+            State current = state.get();
+
+            if (current == State.CLOSING || current == State.CLOSED) {
+                return false;
+            }
+
+            oldHandler = this.handler;
+            this.handler = handler;
+        }
+
+        if (oldHandler != null) {
+            oldHandler.replaced();
+        }
+        return true;
+    }
+
+    @Override
+    String describe() {
+        return "push subscription WebSocket to namespace '" + request.getNamespace() +
+                "' topic '" + request.getTopicAttributes() + "'";
+    }
+
+    @Override
+    Headers buildHeaders() {
+        String lastMessageId = resumeMarkers == null ? null : resumeMarkers.load(request.getSubscription().getKey());
+        return buildHeaders(getHost(), request, lastMessageId);
+    }
+
+    @Override
+    void connectFailed(Throwable error) {
+        currentHandler().error(error);
+    }
+
+    @Override
+    void connected(WebSocket ws) {
+        currentHandler().connected();
+    }
+
+    @Override
+    void received(CogsMessage message) {
+        dispatcher.dispatch(message);
+    }
+
+    @Override
+    boolean isSubscribed(CogsSubscription subscription) {
+        State current = state.get();
+        return current != State.CLOSING && current != State.CLOSED;
+    }
+
+    @Override
+    void closed(Exception error) {
+        currentHandler().closed(error);
+    }
+
+    /**
+     * Supplies the message dispatcher, for its queue depth and handler latency metrics.
+     *
+     * @return the {@link MessageDispatcher dispatcher}
+     */
+    public MessageDispatcher getMessageDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Starts this subscription WebSocket. If the inner WebSocket terminates for a reason other
+     * than a call to stop(), it will be replaced automatically.
+     */
+    public void start() {
+        connectIfIdle();
+    }
+
+    /**
+     * Stops this subscription WebSocket.
+     *
+     * @param callback the {@link Callback} to invoke once this subscription WebSocket has been stopped.
+     */
+    public void stop(Callback<Boolean> callback) {
+        State current;
+
+        do {
+            current = state.get();
+
+            if (current == State.CLOSING || current == State.CLOSED) {
+                callback.call(false);
+                return;
+            }
+        } while (!state.compareAndSet(current, State.CLOSING));
+
+        dispatcher.close();
+        removeMarker(request.getSubscription());
+
+        CogsSubscriptionHandler h;
+
+        synchronized (handlerLock) {
+            h = handler;
+            handler = null;
+        }
+
+        try {
+            disconnect();
+        } finally {
+            state.set(State.CLOSED);
+
+            try {
+                if (h != null) {
+                    h.closed(null);
+                }
+            } finally {
+                callback.call(true);
+            }
+        }
+    }
+
+    /**
+     * Assemble the signed payload of a connect.
+     *
+     * @param request the {@link CogsSubscriptionRequest request}
+     * @param lastMessageId the id of the last message acknowledged, or null to start afresh
+     *
+     * @return the payload
+     */
+    static JSONObject buildPayload(CogsSubscriptionRequest request, String lastMessageId) {
+        JSONObject payload = new JSONObject();
+
+        try {
+            payload.put("access_key", request.getAccessKey());
+            payload.put("client_salt", request.getClientSalt());
+            payload.put("timestamp", Methods.isoNow());
+            payload.put("namespace", request.getNamespace());
+            payload.put("attributes", request.getTopicAttributes());
+
+            if (lastMessageId != null) {
+                payload.put("last_message_id", lastMessageId);
+            }
+        } catch (JSONException e) {
+            throw new CogsSubscriptionException("Error assembling WebSocket auth headers.", e);
+        }
+
+        return payload;
+    }
+
+    private static Headers buildHeaders(String host, CogsSubscriptionRequest request, String lastMessageId) {
+        JSONObject payload = buildPayload(request, lastMessageId);
+
+        Headers headers = new Headers();
+
+        String jsonPayload = payload.toString();
+        byte[] rawPayload = jsonPayload.getBytes(Methods.UTF_8);
+        String b64Payload = Methods._printBase64Binary(rawPayload);
+
+        String hmac;
+
+        try {
+            hmac = Methods.getHmac(rawPayload, request.getClientSecret());
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new CogsSubscriptionException("Error signing auth payload header.", e);
+        }
+
+        headers.add("Host", host);
+        headers.add("Json-Base64" , b64Payload);
+        headers.add("Payload-HMAC" , hmac);
+
+        Log.i("Cogs-SDK", "Payload JSON: " + jsonPayload);
+        Log.i("Cogs-SDK", "Json-Base64: " + b64Payload);
+        Log.i("Cogs-SDK", "Payload-HMAC" + hmac);
+
+        return headers;
+    }
+}
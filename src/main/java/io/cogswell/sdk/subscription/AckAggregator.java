@@ -0,0 +1,309 @@
+package io.cogswell.sdk.subscription;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Collects message acknowledgements for a subscription WebSocket and sends them in batches.
+ *
+ * By default every acknowledgement is sent as soon as it is made, in the single
+ * message-received frame the push route has always accepted. That frame is assembled from
+ * pre-encoded text, with no JSON object construction. Raising the batch size with
+ * {@link Builder#withMaxBatch(int)} coalesces acknowledgements into one messages-received
+ * frame, sent when the batch fills or when the flush interval passes after the first
+ * acknowledgement in it. A batch holding a single acknowledgement is still sent in the single
+ * frame.
+ *
+ * Acknowledgements which cannot be sent (because the socket is closed) are discarded; the
+ * server redelivers unacknowledged messages.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class AckAggregator {
+    private static final String SINGLE_PREFIX = "{\"event\":\"message-received\",\"message_id\":";
+    private static final String BATCH_PREFIX = "{\"event\":\"messages-received\",\"message_ids\":[";
+
+    /**
+     * Sends a frame on the current connection.
+     */
+    public interface Sink {
+        /**
+         * @param frame the frame to send
+         *
+         * @return <tt>true</tt> if the frame was sent
+         */
+        boolean send(String frame);
+    }
+
+    private final Sink sink;
+    private final int maxBatch;
+    private final long flushMillis;
+
+    private String[] ids;
+    private long[] times;
+    private int size = 0;
+    private boolean flushScheduled = false;
+
+    private final AtomicLong ackCount = new AtomicLong();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (AckAggregator.this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    private AckAggregator(Builder builder, Sink sink) {
+        this.sink = sink;
+        this.maxBatch = builder.maxBatch;
+        this.flushMillis = builder.flushMillis;
+        this.ids = new String[maxBatch];
+        this.times = new long[maxBatch];
+    }
+
+    /**
+     * Acknowledge a message.
+     *
+     * @param messageId the id of the message
+     */
+    public void ack(String messageId) {
+        if (messageId == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (maxBatch == 1) {
+            boolean sent = sink.send(singleFrame(messageId));
+            long latency = System.nanoTime() - now;
+
+            sent(sent, 1, latency, latency);
+            return;
+        }
+
+        boolean full;
+        boolean schedule = false;
+
+        synchronized (this) {
+            ids[size] = messageId;
+            times[size] = now;
+            size++;
+
+            full = size == maxBatch;
+
+            if (!full && !flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (full) {
+            flush();
+        } else if (schedule) {
+            GambitSDKService.getInstance().schedule(flushMillis, TimeUnit.MILLISECONDS, flusher);
+        }
+    }
+
+    /**
+     * Send any acknowledgements waiting in the current batch now.
+     */
+    public void flush() {
+        String[] batchIds;
+        long[] batchTimes;
+        int batchSize;
+
+        synchronized (this) {
+            if (size == 0) {
+                return;
+            }
+
+            batchIds = ids;
+            batchTimes = times;
+            batchSize = size;
+
+            ids = new String[maxBatch];
+            times = new long[maxBatch];
+            size = 0;
+        }
+
+        String frame = batchSize == 1 ? singleFrame(batchIds[0]) : batchFrame(batchIds, batchSize);
+        boolean sent = sink.send(frame);
+
+        long now = System.nanoTime();
+        long latency = 0;
+        for (int i = 0; i < batchSize; i++) {
+            latency += now - batchTimes[i];
+        }
+
+        sent(sent, batchSize, latency, now - batchTimes[0]);
+    }
+
+    private void sent(boolean sent, int batchSize, long latencyNanos, long oldestNanos) {
+        if (!sent) {
+            droppedCount.addAndGet(batchSize);
+            return;
+        }
+
+        ackCount.addAndGet(batchSize);
+        frameCount.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        raise(maxLatencyNanos, oldestNanos);
+        raise(maxBatchSize, batchSize);
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+
+    private static String singleFrame(String messageId) {
+        return SINGLE_PREFIX + quote(messageId) + "}";
+    }
+
+    private static String batchFrame(String[] ids, int size) {
+        StringBuilder frame = new StringBuilder(BATCH_PREFIX.length() + size * 40);
+        frame.append(BATCH_PREFIX);
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                frame.append(',');
+            }
+            frame.append(quote(ids[i]));
+        }
+
+        return frame.append("]}").toString();
+    }
+
+    /**
+     * Message ids are normally plain UUIDs, which need no escaping.
+     */
+    private static String quote(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+
+            if (c < 0x20 || c == '"' || c == '\\' || c == '/') {
+                return JSONObject.quote(id);
+            }
+        }
+
+        return "\"" + id + "\"";
+    }
+
+    /**
+     * @return the number of acknowledgements sent
+     */
+    public long getAckCount() {
+        return ackCount.get();
+    }
+
+    /**
+     * @return the number of acknowledgement frames sent
+     */
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * @return the number of acknowledgements discarded because they could not be sent
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the mean number of acknowledgements per frame
+     */
+    public double getAverageBatchSize() {
+        long frames = frameCount.get();
+        return frames == 0 ? 0 : (double) ackCount.get() / frames;
+    }
+
+    /**
+     * @return the largest number of acknowledgements sent in one frame
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * @return the mean time, in microseconds, from a message being acknowledged to its frame being sent
+     */
+    public long getAverageLatencyMicros() {
+        long acks = ackCount.get();
+        return acks == 0 ? 0 : totalLatencyNanos.get() / acks / 1000;
+    }
+
+    /**
+     * @return the longest time, in microseconds, from a message being acknowledged to its frame being sent
+     */
+    public long getMaxLatencyMicros() {
+        return maxLatencyNanos.get() / 1000;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxBatch = 1;
+        private long flushMillis = 100;
+
+        private Builder() {}
+
+        /**
+         * @param maxBatch the most acknowledgements to send in one frame; 1 sends each one
+         *                 immediately. Batches larger than 1 require a server which accepts the
+         *                 messages-received frame.
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+            return this;
+        }
+
+        /**
+         * @param interval the longest an acknowledgement may wait for its batch to fill
+         * @param unit the {@link TimeUnit units} of the interval
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withFlushInterval(long interval, TimeUnit unit) {
+            this.flushMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Build an aggregator for one WebSocket.
+         *
+         * @param sink the {@link Sink} which sends frames on the WebSocket
+         *
+         * @return the {@link AckAggregator aggregator}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public AckAggregator build(Sink sink) throws CogsBuilderException {
+            if (sink == null)
+                throw new CogsBuilderException("Sink must not be null.");
+            if (maxBatch < 1)
+                throw new CogsBuilderException("Max batch must be at least 1.");
+            if (flushMillis < 1)
+                throw new CogsBuilderException("Flush interval must be positive.");
+
+            return new AckAggregator(this, sink);
+        }
+    }
+}
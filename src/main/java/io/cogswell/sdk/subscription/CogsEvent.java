@@ -1,5 +1,7 @@
 package io.cogswell.sdk.subscription;
 
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.json.Json;
 import io.cogswell.sdk.json.JsonNode;
 import io.cogswell.sdk.json.JsonObject;
 
@@ -15,12 +17,34 @@ public class CogsEvent {
 
     private JsonObject attributes;
 
+    // The range of the UTF-8 frame holding the attributes, until they are parsed.
+    private byte[] frame;
+    private int attributesStart;
+    private int attributesEnd;
+
     public CogsEvent(JsonNode eventJson) {
         namespace = eventJson.str("namespace");
         event_name = eventJson.str("event_name");
         timestamp = eventJson.str("timestamp");
 
-        attributes = (JsonObject) eventJson.obj("attributes");
+        JsonNode attributesJson = eventJson.obj("attributes");
+        attributes = attributesJson.isNull() ? null : (JsonObject) attributesJson;
+    }
+
+    /**
+     * Used by {@link CogsMessageDecoder}. The attributes are left as a range of the frame,
+     * and parsed on the first call to {@link #getAttributes()}.
+     */
+    CogsEvent(String namespace, String eventName, String timestamp, byte[] frame, int attributesStart, int attributesEnd) {
+        this.namespace = namespace;
+        this.event_name = eventName;
+        this.timestamp = timestamp;
+
+        if (attributesStart >= 0) {
+            this.frame = frame;
+            this.attributesStart = attributesStart;
+            this.attributesEnd = attributesEnd;
+        }
     }
 
     public String getNamespace() {
@@ -35,7 +59,13 @@ public class CogsEvent {
         return timestamp;
     }
 
-    public JsonObject getAttributes() {
+    public synchronized JsonObject getAttributes() {
+        if (frame != null) {
+            JsonNode attributesJson = Json.parse(new String(frame, attributesStart, attributesEnd - attributesStart, Methods.UTF_8));
+            attributes = attributesJson.isNull() ? null : (JsonObject) attributesJson;
+            frame = null;
+        }
+
         return attributes;
     }
 }
@@ -16,6 +16,7 @@ public class CogsMessage {
     private String event_name;
     private String message_id;
     private String notification_message;
+    private Long subscription_id;
 
     private CogsEvent forwarded_event;
 
@@ -34,6 +35,22 @@ public class CogsMessage {
         }
     }
 
+    /**
+     * Used by {@link CogsMessageDecoder}, which reads the fields straight from the frame.
+     */
+    CogsMessage(String namespace, String ciidHash, String campaignName, Long campaignId, String eventName,
+                String messageId, String notificationMessage, Long subscriptionId, CogsEvent forwardedEvent) {
+        this.namespace = namespace;
+        this.ciid_hash = ciidHash;
+        this.campaign_name = campaignName;
+        this.campaign_id = campaignId;
+        this.event_name = eventName;
+        this.message_id = messageId;
+        this.notification_message = notificationMessage;
+        this.subscription_id = subscriptionId;
+        this.forwarded_event = forwardedEvent;
+    }
+
     public String getNamespace() {
         return namespace;
     }
@@ -62,6 +79,14 @@ public class CogsMessage {
         return notification_message;
     }
 
+    /**
+     * @return the id of the subscription this message was delivered for, when it arrived over a
+     * {@link CogsSubscriptionMultiplexer multiplexed} WebSocket; otherwise <tt>null</tt>
+     */
+    public Long getSubscriptionId() {
+        return subscription_id;
+    }
+
     public CogsEvent getForwardedEvent() {
         return forwarded_event;
     }
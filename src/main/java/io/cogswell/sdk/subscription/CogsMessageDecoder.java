@@ -0,0 +1,142 @@
+package io.cogswell.sdk.subscription;
+
+import org.json.JSONException;
+
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.json.JsonScanner;
+
+/**
+ * Decodes a push WebSocket text frame straight into a {@link CogsMessage}.
+ *
+ * The frame is scanned once with a {@link JsonScanner}. Member names are compared in place
+ * against the fields a {@link CogsMessage} and its {@link CogsEvent} carry, and the values of
+ * those fields are the only text which is decoded; unknown members are stepped over without
+ * allocating. The forwarded event's attributes are recorded as a range of the frame and only
+ * parsed if {@link CogsEvent#getAttributes()} is called.
+ */
+public class CogsMessageDecoder {
+    private static final byte[] NAMESPACE = "namespace".getBytes(Methods.UTF_8);
+    private static final byte[] CIID_HASH = "ciid_hash".getBytes(Methods.UTF_8);
+    private static final byte[] CAMPAIGN_NAME = "campaign_name".getBytes(Methods.UTF_8);
+    private static final byte[] CAMPAIGN_ID = "campaign_id".getBytes(Methods.UTF_8);
+    private static final byte[] EVENT_NAME = "event_name".getBytes(Methods.UTF_8);
+    private static final byte[] MESSAGE_ID = "message_id".getBytes(Methods.UTF_8);
+    private static final byte[] NOTIFICATION_MESSAGE = "notification_message".getBytes(Methods.UTF_8);
+    private static final byte[] SUB_ID = "sub_id".getBytes(Methods.UTF_8);
+    private static final byte[] FORWARDED_EVENT = "forwarded_event".getBytes(Methods.UTF_8);
+    private static final byte[] TIMESTAMP = "timestamp".getBytes(Methods.UTF_8);
+    private static final byte[] ATTRIBUTES = "attributes".getBytes(Methods.UTF_8);
+
+    private CogsMessageDecoder() {}
+
+    /**
+     * Decode a frame.
+     *
+     * @param frame the text of the frame
+     *
+     * @return the {@link CogsMessage}, or null if the frame is not a well formed JSON object
+     */
+    public static CogsMessage decode(String frame) {
+        try {
+            return message(new JsonScanner(frame.getBytes(Methods.UTF_8)));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static CogsMessage message(JsonScanner scanner) throws JSONException {
+        String namespace = null;
+        String ciidHash = null;
+        String campaignName = null;
+        Long campaignId = null;
+        String eventName = null;
+        String messageId = null;
+        String notificationMessage = null;
+        Long subscriptionId = null;
+        CogsEvent forwardedEvent = null;
+
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            int name = scanner.skipName();
+
+            if (scanner.nameEquals(name, NAMESPACE)) {
+                namespace = scanner.nextText();
+            } else if (scanner.nameEquals(name, CIID_HASH)) {
+                ciidHash = scanner.nextText();
+            } else if (scanner.nameEquals(name, CAMPAIGN_NAME)) {
+                campaignName = scanner.nextText();
+            } else if (scanner.nameEquals(name, CAMPAIGN_ID)) {
+                campaignId = number(scanner);
+            } else if (scanner.nameEquals(name, EVENT_NAME)) {
+                eventName = scanner.nextText();
+            } else if (scanner.nameEquals(name, MESSAGE_ID)) {
+                messageId = scanner.nextText();
+            } else if (scanner.nameEquals(name, NOTIFICATION_MESSAGE)) {
+                notificationMessage = scanner.nextText();
+            } else if (scanner.nameEquals(name, SUB_ID)) {
+                subscriptionId = number(scanner);
+            } else if (scanner.nameEquals(name, FORWARDED_EVENT) && scanner.peek() == '{') {
+                forwardedEvent = event(scanner);
+            } else {
+                scanner.skipValue();
+            }
+        }
+        scanner.endObject();
+
+        return new CogsMessage(namespace, ciidHash, campaignName, campaignId, eventName, messageId,
+                notificationMessage, subscriptionId, forwardedEvent);
+    }
+
+    private static CogsEvent event(JsonScanner scanner) throws JSONException {
+        String namespace = null;
+        String eventName = null;
+        String timestamp = null;
+        int attributesStart = -1;
+        int attributesEnd = -1;
+
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            int name = scanner.skipName();
+
+            if (scanner.nameEquals(name, NAMESPACE)) {
+                namespace = scanner.nextText();
+            } else if (scanner.nameEquals(name, EVENT_NAME)) {
+                eventName = scanner.nextText();
+            } else if (scanner.nameEquals(name, TIMESTAMP)) {
+                timestamp = scanner.nextText();
+            } else if (scanner.nameEquals(name, ATTRIBUTES) && scanner.peek() == '{') {
+                attributesStart = scanner.position();
+                scanner.skipValue();
+                attributesEnd = scanner.position();
+            } else {
+                scanner.skipValue();
+            }
+        }
+        scanner.endObject();
+
+        return new CogsEvent(namespace, eventName, timestamp, scanner.input(), attributesStart, attributesEnd);
+    }
+
+    /**
+     * Read a number, which the push route may also send as a string.
+     *
+     * @return the number, or null if the value is not numeric
+     */
+    private static Long number(JsonScanner scanner) throws JSONException {
+        String value = scanner.nextText();
+
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException notNumeric) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.cogswell.sdk.subscription;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The immutable, canonical identity of a subscription: its namespace and topic attributes.
+ *
+ * The attributes are serialized once, with the members of every object sorted by name and
+ * numbers written in their shortest form, so subscriptions with the same attributes have the
+ * same key however their JSON was assembled. The hash is computed from that text up front,
+ * which makes the key cheap to use in hash maps.
+ */
+public final class CogsSubscriptionKey {
+    private final String namespace;
+    private final String attributes;
+    private final int hash;
+
+    private CogsSubscriptionKey(String namespace, String attributes) {
+        this.namespace = namespace;
+        this.attributes = attributes;
+        this.hash = 31 * (namespace == null ? 0 : namespace.hashCode()) + attributes.hashCode();
+    }
+
+    /**
+     * Create the key for a namespace and its topic attributes. The attributes are read once;
+     * changing them afterwards does not change the key.
+     *
+     * @param namespace the namespace
+     * @param topicAttributes the topic attributes, or null
+     *
+     * @return the {@link CogsSubscriptionKey key}
+     */
+    public static CogsSubscriptionKey of(String namespace, JSONObject topicAttributes) {
+        StringBuilder canonical = new StringBuilder();
+        append(canonical, topicAttributes);
+
+        return new CogsSubscriptionKey(namespace, canonical.toString());
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * @return the topic attributes in canonical form
+     */
+    public String getCanonicalAttributes() {
+        return attributes;
+    }
+
+    private static void append(StringBuilder canonical, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            canonical.append("null");
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> names = new ArrayList<>(object.length());
+
+            for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+                names.add(keys.next());
+            }
+            Collections.sort(names);
+
+            canonical.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    canonical.append(',');
+                }
+
+                String name = names.get(i);
+                canonical.append(JSONObject.quote(name)).append(':');
+                append(canonical, object.opt(name));
+            }
+            canonical.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+
+            canonical.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    canonical.append(',');
+                }
+                append(canonical, array.opt(i));
+            }
+            canonical.append(']');
+        } else if (value instanceof Number) {
+            try {
+                canonical.append(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                canonical.append(value);
+            }
+        } else if (value instanceof Boolean) {
+            canonical.append(value);
+        } else {
+            canonical.append(JSONObject.quote(value.toString()));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CogsSubscriptionKey that = (CogsSubscriptionKey) o;
+
+        return hash == that.hash &&
+                (namespace == null ? that.namespace == null : namespace.equals(that.namespace)) &&
+                attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return namespace + ":" + attributes;
+    }
+}
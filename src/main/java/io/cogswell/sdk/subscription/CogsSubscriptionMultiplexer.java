@@ -0,0 +1,360 @@
+package io.cogswell.sdk.subscription;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.koushikdutta.async.http.Headers;
+import com.koushikdutta.async.http.WebSocket;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.Methods;
+import io.cogswell.sdk.exceptions.CogsSubscriptionException;
+
+/**
+ * Carries many subscriptions over a single push WebSocket.
+ *
+ * All subscriptions on a multiplexer share one set of credentials. Each subscription is
+ * assigned a numeric id and registered on the open connection with a subscribe frame, which
+ * carries the same signed payload the dedicated WebSocket sends in its handshake headers.
+ * Messages tagged with a sub_id are routed to that subscription's handler. An untagged message
+ * cannot be matched to a subscription, and is dropped.
+ *
+ * The connection is opened when the first subscription is added and closed when the last is
+ * removed; it is managed by {@link PushConnection}, as a dedicated WebSocket's is. If it
+ * drops, it is re-established and every subscription is re-registered as a unit, each with
+ * the id of the last message its handler processed as last_message_id, when a
+ * {@link ResumeMarkerStore} is configured.
+ *
+ * The push route does not yet implement this protocol, so multiplexing cannot be enabled
+ * through the public API of {@link GambitSDKService}.
+ */
+public class CogsSubscriptionMultiplexer extends PushConnection {
+    private static String baseHost = "api.cogswell.io";
+    private static String baseUrl = "https://" + baseHost;
+
+    private final String accessKey;
+    private final String clientSalt;
+    private final String clientSecret;
+
+    private final ConcurrentHashMap<Long, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CogsSubscription, Route> routesBySubscription = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * One entry of the routing table.
+     */
+    private class Route implements MessageDispatcher.Receiver {
+        final long id;
+        final CogsSubscriptionRequest request;
+        final MessageDispatcher dispatcher;
+        volatile CogsSubscriptionHandler handler;
+
+        Route(long id, CogsSubscriptionRequest request, CogsSubscriptionHandler handler) {
+            this.id = id;
+            this.request = request;
+            this.handler = handler;
+            this.dispatcher = GambitSDKService.getInstance().newMessageDispatcher(this);
+        }
+
+        @Override
+        public void message(CogsMessage message) {
+            deliver(message, handler, request.getSubscription());
+        }
+    }
+
+    private CogsSubscriptionMultiplexer(String accessKey, String clientSalt, String clientSecret) {
+        this.accessKey = accessKey;
+        this.clientSalt = clientSalt;
+        this.clientSecret = clientSecret;
+    }
+
+    public static void setBaseUrl(String baseUrl) {
+        CogsSubscriptionMultiplexer.baseUrl = baseUrl;
+    }
+
+    @Override
+    protected Uri getUri() {
+        return Uri.parse(baseUrl + "/push");
+    }
+
+    @Override
+    protected String getProtocol() {
+        return "cogs";
+    }
+
+    /**
+     * The key identifying the credentials a subscription request is signed with. Requests with
+     * the same key can share a multiplexer.
+     *
+     * @param request the {@link CogsSubscriptionRequest request}
+     *
+     * @return the key
+     */
+    public static String credentialsKey(CogsSubscriptionRequest request) {
+        return request.getAccessKey() + ":" + request.getClientSalt() + ":" + request.getClientSecret();
+    }
+
+    /**
+     * Add a subscription, or replace the handler of an existing one. The shared connection is
+     * opened if this is the first subscription.
+     *
+     * @param request the {@link CogsSubscriptionRequest request} detailing the subscription
+     * @param handler the {@link CogsSubscriptionHandler handler} for the subscription's messages
+     */
+    public void add(CogsSubscriptionRequest request, CogsSubscriptionHandler handler) {
+        Route existing = routesBySubscription.get(request.getSubscription());
+        Route route = null;
+
+        if (existing == null) {
+            route = new Route(nextId.incrementAndGet(), request, handler);
+            existing = routesBySubscription.putIfAbsent(request.getSubscription(), route);
+        }
+
+        if (existing != null) {
+            CogsSubscriptionHandler oldHandler = existing.handler;
+            existing.handler = handler;
+
+            if (oldHandler != null) {
+                oldHandler.replaced();
+            }
+            return;
+        }
+
+        routes.put(route.id, route);
+
+        WebSocket ws = currentWebSocket();
+        if (ws != null && sendSubscribe(ws, route)) {
+            handler.connected();
+        }
+
+        connectIfIdle();
+    }
+
+    /**
+     * Remove a subscription. The shared connection is closed once no subscriptions remain.
+     *
+     * @param subscription the {@link CogsSubscription subscription} to remove
+     * @param callback the {@link Callback} to invoke once the subscription has been removed
+     */
+    public void remove(CogsSubscription subscription, Callback<Boolean> callback) {
+        Route route = routesBySubscription.remove(subscription);
+
+        if (route == null) {
+            callback.call(false);
+            return;
+        }
+
+        routes.remove(route.id);
+        route.dispatcher.close();
+        removeMarker(subscription);
+
+        try {
+            send(frame("unsubscribe", route.id).toString());
+
+            if (routes.isEmpty()) {
+                stop();
+            }
+        } finally {
+            try {
+                route.handler.closed(null);
+            } finally {
+                callback.call(true);
+            }
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if no subscriptions are carried by this multiplexer
+     */
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * Supplies the message dispatcher of a subscription, for its queue depth and handler
+     * latency metrics.
+     *
+     * @param subscription the {@link CogsSubscription subscription}
+     *
+     * @return the {@link MessageDispatcher dispatcher}, or null if the subscription is not carried by this multiplexer
+     */
+    public MessageDispatcher getMessageDispatcher(CogsSubscription subscription) {
+        Route route = routesBySubscription.get(subscription);
+        return route == null ? null : route.dispatcher;
+    }
+
+    /**
+     * @return the number of subscriptions carried by this multiplexer
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * Close the shared connection. Unlike a dedicated WebSocket, a multiplexer goes back to
+     * {@link AbstractCogsWebSocket.State#IDLE IDLE}, and starts again with the next
+     * subscription. {@link AbstractCogsWebSocket.State#CLOSING CLOSING} marks a stop which
+     * arrived while a connect was in flight.
+     */
+    private void stop() {
+        AbstractCogsWebSocket.State current;
+
+        do {
+            current = state.get();
+
+            if (current == AbstractCogsWebSocket.State.IDLE || current == AbstractCogsWebSocket.State.CLOSING) {
+                return;
+            }
+        } while (!state.compareAndSet(current, current == AbstractCogsWebSocket.State.CONNECTING ?
+                AbstractCogsWebSocket.State.CLOSING : AbstractCogsWebSocket.State.IDLE));
+
+        disconnect();
+
+        // A subscription may have been added while the last one was being removed.
+        if (!routes.isEmpty()) {
+            connectIfIdle();
+        }
+    }
+
+    /**
+     * Called when an abandoned connect completes, after a stop which arrived while it was in
+     * flight. Starts again if subscriptions have been added since.
+     */
+    @Override
+    void abandoned() {
+        if (state.compareAndSet(AbstractCogsWebSocket.State.CLOSING, AbstractCogsWebSocket.State.IDLE) && !routes.isEmpty()) {
+            connectIfIdle();
+        }
+    }
+
+    @Override
+    String describe() {
+        return "multiplexed push WebSocket for " + routes.size() + " subscriptions";
+    }
+
+    @Override
+    void connectFailed(Throwable error) {
+        for (Route route : routes.values()) {
+            route.handler.error(error);
+        }
+    }
+
+    @Override
+    void connected(WebSocket ws) {
+        // Re-register every subscription on the new connection.
+        for (Route route : routes.values()) {
+            if (sendSubscribe(ws, route)) {
+                route.handler.connected();
+            }
+        }
+    }
+
+    @Override
+    void received(CogsMessage message) {
+        Long subscriptionId = message.getSubscriptionId();
+        Route route = subscriptionId == null ? null : routes.get(subscriptionId);
+
+        if (route != null) {
+            route.dispatcher.dispatch(message);
+        } else if (subscriptionId == null) {
+            Log.w("Cogs-SDK", "Dropping message without a subscription id.");
+        } else {
+            Log.w("Cogs-SDK", "Dropping message for unknown subscription " + subscriptionId + ".");
+        }
+    }
+
+    @Override
+    boolean isSubscribed(CogsSubscription subscription) {
+        return routesBySubscription.containsKey(subscription);
+    }
+
+    private boolean sendSubscribe(WebSocket ws, Route route) {
+        try {
+            JSONObject payload = new JSONObject();
+            payload.put("access_key", accessKey);
+            payload.put("client_salt", clientSalt);
+            payload.put("timestamp", Methods.isoNow());
+            payload.put("namespace", route.request.getNamespace());
+            payload.put("attributes", route.request.getTopicAttributes());
+
+            String lastMessageId = resumeMarkers == null ? null : resumeMarkers.load(route.request.getSubscription().getKey());
+            if (lastMessageId != null) {
+                payload.put("last_message_id", lastMessageId);
+            }
+
+            byte[] rawPayload = payload.toString().getBytes(Methods.UTF_8);
+
+            JSONObject frame = frame("subscribe", route.id);
+            frame.put("json_base64", Methods._printBase64Binary(rawPayload));
+            frame.put("payload_hmac", Methods.getHmac(rawPayload, clientSecret));
+
+            return send(ws, frame.toString());
+        } catch (JSONException | NoSuchAlgorithmException | InvalidKeyException e) {
+            Log.e("Cogs-SDK", "Error assembling subscribe frame.", e);
+            route.handler.error(e);
+            return false;
+        }
+    }
+
+    private static JSONObject frame(String event, long subscriptionId) {
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put("event", event);
+            json.put("sub_id", subscriptionId);
+        } catch (JSONException e) {
+            throw new CogsSubscriptionException("Error assembling subscription frame.", e);
+        }
+
+        return json;
+    }
+
+    @Override
+    Headers buildHeaders() {
+        JSONObject payload = new JSONObject();
+
+        try {
+            payload.put("access_key", accessKey);
+            payload.put("client_salt", clientSalt);
+            payload.put("timestamp", Methods.isoNow());
+            payload.put("multiplex", true);
+        } catch (JSONException e) {
+            throw new CogsSubscriptionException("Error assembling WebSocket auth headers.", e);
+        }
+
+        byte[] rawPayload = payload.toString().getBytes(Methods.UTF_8);
+        String hmac;
+
+        try {
+            hmac = Methods.getHmac(rawPayload, clientSecret);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new CogsSubscriptionException("Error signing auth payload header.", e);
+        }
+
+        Headers headers = new Headers();
+        headers.add("Host", baseHost);
+        headers.add("Json-Base64", Methods._printBase64Binary(rawPayload));
+        headers.add("Payload-HMAC", hmac);
+
+        return headers;
+    }
+
+    /**
+     * Creates a new instance for the credentials of a subscription request.
+     *
+     * @param request a {@link CogsSubscriptionRequest request} bearing the credentials to use
+     *
+     * @return the new {@link CogsSubscriptionMultiplexer multiplexer}
+     */
+    public static CogsSubscriptionMultiplexer create(CogsSubscriptionRequest request) {
+        return new CogsSubscriptionMultiplexer(request.getAccessKey(), request.getClientSalt(), request.getClientSecret());
+    }
+}
@@ -0,0 +1,135 @@
+package io.cogswell.sdk.subscription;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.cogswell.sdk.GambitSDKService;
+
+/**
+ * Keeps resume markers in a file, so a cold start resumes where the previous process left off.
+ *
+ * Markers change with every acknowledged message, so they are not written through. A save or
+ * remove schedules a write of every marker after the flush delay, and changes made in the
+ * meantime share it. The file is replaced atomically, by writing a temporary file and renaming it over
+ * the old one; a crash loses at most the markers of the last flush delay, which only costs
+ * some replay.
+ */
+public class FileResumeMarkerStore implements ResumeMarkerStore {
+    private static final String FILE_NAME = "resume-markers.properties";
+
+    private final File file;
+    private final long flushDelayMillis;
+    private final ConcurrentHashMap<String, String> markers = new ConcurrentHashMap<>();
+
+    private boolean flushScheduled = false;
+
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (FileResumeMarkerStore.this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    /**
+     * Open (or create) a marker file in the specified directory, typically the application's
+     * files directory.
+     *
+     * @param directory the directory holding the marker file
+     * @param flushDelay how long after a save the markers are written
+     * @param unit the {@link TimeUnit units} of the flush delay
+     *
+     * @throws IOException if the directory cannot be created or the file cannot be read
+     */
+    public FileResumeMarkerStore(File directory, long flushDelay, TimeUnit unit) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create marker directory " + directory);
+
+        this.file = new File(directory, FILE_NAME);
+        this.flushDelayMillis = unit.toMillis(flushDelay);
+
+        if (file.isFile()) {
+            Properties properties = new Properties();
+            FileInputStream in = new FileInputStream(file);
+
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+
+            for (String name : properties.stringPropertyNames()) {
+                markers.put(name, properties.getProperty(name));
+            }
+        }
+    }
+
+    @Override
+    public String load(CogsSubscriptionKey key) {
+        return markers.get(key.toString());
+    }
+
+    @Override
+    public void save(CogsSubscriptionKey key, String messageId) {
+        markers.put(key.toString(), messageId);
+        scheduleFlush();
+    }
+
+    @Override
+    public void remove(CogsSubscriptionKey key) {
+        if (markers.remove(key.toString()) != null) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+
+        GambitSDKService.getInstance().schedule(flushDelayMillis, TimeUnit.MILLISECONDS, flusher);
+    }
+
+    /**
+     * Write every marker to the file now.
+     */
+    public synchronized void flush() {
+        Properties properties = new Properties();
+
+        for (Map.Entry<String, String> marker : markers.entrySet()) {
+            properties.setProperty(marker.getKey(), marker.getValue());
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+
+            try {
+                properties.store(out, null);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e("Cogs-SDK", "Error writing resume markers.", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.cogswell.sdk.subscription;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps resume markers for the life of the process. Reconnects resume where they left off;
+ * a cold start begins afresh.
+ */
+public class MemoryResumeMarkerStore implements ResumeMarkerStore {
+    private final ConcurrentHashMap<CogsSubscriptionKey, String> markers = new ConcurrentHashMap<>();
+
+    @Override
+    public String load(CogsSubscriptionKey key) {
+        return markers.get(key);
+    }
+
+    @Override
+    public void save(CogsSubscriptionKey key, String messageId) {
+        markers.put(key, messageId);
+    }
+
+    @Override
+    public void remove(CogsSubscriptionKey key) {
+        markers.remove(key);
+    }
+}
@@ -0,0 +1,225 @@
+package io.cogswell.sdk.subscription;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Suppresses messages the push route redelivers, by message id.
+ *
+ * Ids are remembered for a time window, in bounded memory. By default the ids themselves are
+ * kept, oldest first, up to a maximum count; the check is exact, at roughly 70 bytes per id
+ * plus the id string (about 80 bytes more for a UUID). Setting a false positive rate with
+ * {@link Builder#withFalsePositiveRate(double)} keeps them in two rotating Bloom filters
+ * instead, each sized for the maximum count, at about 1.2 bytes per id in each filter for a
+ * rate of 1%. A false positive suppresses a message which was never delivered, so the rate
+ * should be chosen with that in mind.
+ *
+ * Messages without an id are never suppressed. A message is checked just before its handler
+ * would run, not on arrival, so a message which the {@link MessageDispatcher} discarded is not
+ * suppressed when it is redelivered.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class MessageDeduplicator {
+    private final long windowNanos;
+    private final int maxIds;
+    private final double falsePositiveRate;
+
+    private final LinkedHashMap<String, Long> recent;
+
+    private BloomFilter<CharSequence> current;
+    private BloomFilter<CharSequence> previous;
+    private int currentCount = 0;
+    private long currentStart;
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    private MessageDeduplicator(Builder builder) {
+        this.windowNanos = builder.windowNanos;
+        this.maxIds = builder.maxIds;
+        this.falsePositiveRate = builder.falsePositiveRate;
+
+        if (falsePositiveRate > 0) {
+            this.recent = null;
+            this.current = newFilter();
+            this.currentStart = System.nanoTime();
+        } else {
+            this.recent = new LinkedHashMap<>(Math.min(maxIds, 1024) * 4 / 3 + 1);
+        }
+    }
+
+    /**
+     * Record a message id.
+     *
+     * @param messageId the id of the message
+     *
+     * @return <tt>true</tt> if the id was seen within the window, and the message should be suppressed
+     */
+    public boolean isDuplicate(String messageId) {
+        if (messageId == null) {
+            return false;
+        }
+
+        checkedCount.incrementAndGet();
+
+        boolean duplicate;
+        synchronized (this) {
+            duplicate = recent == null ? checkFilters(messageId) : checkRecent(messageId);
+        }
+
+        if (duplicate) {
+            duplicateCount.incrementAndGet();
+        }
+
+        return duplicate;
+    }
+
+    private boolean checkRecent(String messageId) {
+        long now = System.nanoTime();
+
+        Iterator<Map.Entry<String, Long>> oldest = recent.entrySet().iterator();
+        while (oldest.hasNext() && now - oldest.next().getValue() > windowNanos) {
+            oldest.remove();
+        }
+
+        if (recent.containsKey(messageId)) {
+            return true;
+        }
+
+        recent.put(messageId, now);
+
+        if (recent.size() > maxIds) {
+            oldest = recent.entrySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+
+        return false;
+    }
+
+    private boolean checkFilters(String messageId) {
+        long now = System.nanoTime();
+
+        // Each filter covers up to one window, and is checked for one more after it is retired.
+        if (currentCount >= maxIds || now - currentStart > windowNanos) {
+            previous = current;
+            current = newFilter();
+            currentCount = 0;
+            currentStart = now;
+        }
+
+        if (current.mightContain(messageId) || (previous != null && previous.mightContain(messageId))) {
+            return true;
+        }
+
+        current.put(messageId);
+        currentCount++;
+
+        return false;
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(Funnels.unencodedCharsFunnel(), maxIds, falsePositiveRate);
+    }
+
+    /**
+     * Approximate memory, in bytes, taken by a million ids in a Bloom filter with the given
+     * false positive rate. Two filters are kept, so a deduplicator sized for a million ids
+     * takes twice this.
+     *
+     * @param falsePositiveRate the false positive rate
+     *
+     * @return the size in bytes
+     */
+    public static long bloomBytesPerMillion(double falsePositiveRate) {
+        double bits = -1000000 * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        return (long) Math.ceil(bits / 8);
+    }
+
+    /**
+     * @return the number of message ids checked
+     */
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    /**
+     * @return the number of messages suppressed as duplicates
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long windowNanos = TimeUnit.MINUTES.toNanos(10);
+        private int maxIds = 10000;
+        private double falsePositiveRate = 0;
+
+        private Builder() {}
+
+        /**
+         * @param window how long a message id is remembered
+         * @param unit the {@link TimeUnit units} of the window
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withWindow(long window, TimeUnit unit) {
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * @param maxIds the most message ids remembered at once; with Bloom filters, the number
+         *               each filter is sized for
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withMaxIds(int maxIds) {
+            this.maxIds = maxIds;
+            return this;
+        }
+
+        /**
+         * @param falsePositiveRate the rate at which new messages may be mistaken for
+         *                          duplicates in exchange for bounded, compact memory; 0 (the
+         *                          default) keeps the ids and never mistakes a new message
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withFalsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Build a deduplicator for one WebSocket.
+         *
+         * @return the {@link MessageDeduplicator deduplicator}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public MessageDeduplicator build() throws CogsBuilderException {
+            if (windowNanos < 1)
+                throw new CogsBuilderException("Window must be positive.");
+            if (maxIds < 1)
+                throw new CogsBuilderException("Max ids must be at least 1.");
+            if (falsePositiveRate < 0 || falsePositiveRate >= 1)
+                throw new CogsBuilderException("False positive rate must be at least 0 and less than 1.");
+
+            return new MessageDeduplicator(this);
+        }
+    }
+}
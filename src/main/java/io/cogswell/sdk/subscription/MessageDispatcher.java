@@ -0,0 +1,386 @@
+package io.cogswell.sdk.subscription;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.cogswell.sdk.exceptions.CogsBuilderException;
+
+/**
+ * Hands the messages of one subscription from the WebSocket's I/O thread to its handler.
+ *
+ * Frames are decoded on the I/O thread and placed in a bounded ring buffer. A single drain
+ * task at a time runs on the executor and delivers them in arrival order, so a slow handler
+ * no longer holds up the reactor thread shared by every socket of the default
+ * {@link com.koushikdutta.async.http.AsyncHttpClient}. Messages of different subscriptions are
+ * delivered concurrently; the messages of one subscription never are.
+ *
+ * When the buffer is full, the configured {@link OverflowPolicy} applies. The default,
+ * {@link OverflowPolicy#DROP_OLDEST}, never holds up the I/O thread.
+ *
+ * A message is only acknowledged once its handler has run, so a message discarded by
+ * {@link OverflowPolicy#DROP_OLDEST} or replaced by {@link OverflowPolicy#CONFLATE} is left
+ * unacknowledged, for the server to redeliver. With a {@link ResumeMarkerStore}, though, a
+ * reconnect resumes after the last message handled, which skips any discarded before it;
+ * those messages are lost. Only {@link OverflowPolicy#BLOCK} hands every message to the
+ * handler.
+ *
+ * The executor must run every drain task it accepts: a drain task which is silently
+ * discarded leaves the dispatcher marked as draining, and its messages are never delivered.
+ * {@link io.cogswell.sdk.GambitSDKService} gives dispatchers an unbounded executor of their
+ * own, separate from the bounded one used for requests.
+ *
+ * Use the builder() method in order to acquire a builder instance.
+ */
+public class MessageDispatcher {
+    // Messages delivered by one drain task before it yields its worker.
+    private static final int DRAIN_BATCH = 64;
+
+    /**
+     * What to do with a message which arrives while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the I/O thread, and with it further reads from the socket, until there is room.
+         * The default {@link com.koushikdutta.async.http.AsyncHttpClient} runs every socket on
+         * one reactor thread, so a slow handler then stalls every WebSocket, and their pings.
+         */
+        BLOCK,
+
+        /**
+         * Discard the oldest buffered message to make room for the new one. The discarded
+         * message is not acknowledged.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Replace any buffered message with the same namespace and event name by the new one,
+         * in the position of the buffered message. Only the latest state of each kind of
+         * message is delivered once the handler falls behind. If no buffered message matches
+         * and the buffer is full, the oldest is discarded. Replaced and discarded messages
+         * are not acknowledged.
+         */
+        CONFLATE
+    }
+
+    /**
+     * Receives the messages, in order, on an executor thread.
+     */
+    public interface Receiver {
+        /**
+         * @param message the {@link CogsMessage message}
+         */
+        void message(CogsMessage message);
+    }
+
+    private final Executor executor;
+    private final Receiver receiver;
+    private final OverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    private final CogsMessage[] ring;
+    private final long[] times;
+    private int head = 0;
+    private int size = 0;
+    private boolean draining = false;
+    private boolean closed = false;
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong conflatedCount = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHandlerNanos = new AtomicLong();
+    private final AtomicLong maxHandlerNanos = new AtomicLong();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private MessageDispatcher(Builder builder, Executor executor, Receiver receiver) {
+        this.executor = executor;
+        this.receiver = receiver;
+        this.policy = builder.policy;
+        this.ring = new CogsMessage[builder.capacity];
+        this.times = new long[builder.capacity];
+    }
+
+    /**
+     * Queue a message for delivery.
+     *
+     * @param message the {@link CogsMessage message}
+     */
+    public void dispatch(CogsMessage message) {
+        boolean start;
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            if (policy == OverflowPolicy.CONFLATE && conflate(message, now)) {
+                return;
+            }
+
+            if (size == ring.length) {
+                if (policy == OverflowPolicy.BLOCK) {
+                    while (size == ring.length && !closed) {
+                        notFull.awaitUninterruptibly();
+                    }
+
+                    if (closed) {
+                        return;
+                    }
+                } else {
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    size--;
+                    droppedCount.incrementAndGet();
+                }
+            }
+
+            int tail = (head + size) % ring.length;
+            ring[tail] = message;
+            times[tail] = now;
+            size++;
+
+            raise(maxQueueDepth, size);
+
+            start = !draining;
+            draining = true;
+        } finally {
+            lock.unlock();
+        }
+
+        if (start) {
+            submit();
+        }
+    }
+
+    /**
+     * Discard the buffered messages and stop accepting new ones. A thread blocked in
+     * {@link #dispatch(CogsMessage)} is released.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+
+            for (int i = 0; i < size; i++) {
+                ring[(head + i) % ring.length] = null;
+            }
+            head = 0;
+            size = 0;
+
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean conflate(CogsMessage message, long now) {
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            CogsMessage queued = ring[index];
+
+            if (equal(queued.getNamespace(), message.getNamespace()) &&
+                    equal(queued.getEventName(), message.getEventName())) {
+                ring[index] = message;
+                times[index] = now;
+                conflatedCount.incrementAndGet();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void submit() {
+        try {
+            executor.execute(drainer);
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated; deliver on this thread rather than stall the buffer.
+            drain();
+        }
+    }
+
+    private void drain() {
+        for (int delivered = 0; delivered < DRAIN_BATCH; delivered++) {
+            CogsMessage message;
+            long queuedAt;
+
+            lock.lock();
+            try {
+                if (size == 0) {
+                    draining = false;
+                    return;
+                }
+
+                message = ring[head];
+                queuedAt = times[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+
+            try {
+                receiver.message(message);
+            } catch (Throwable t) {
+                Log.e("Cogs-SDK", "Error in subscription message handler.", t);
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            dispatchedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(start - queuedAt);
+            totalHandlerNanos.addAndGet(elapsed);
+            raise(maxHandlerNanos, elapsed);
+        }
+
+        // Yield the worker to other subscriptions; this dispatcher is still marked draining.
+        submit();
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * @return the number of messages waiting for the handler
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the largest number of messages which have waited for the handler at once
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return the number of messages delivered to the handler
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return the number of messages discarded because the buffer was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of buffered messages replaced by a newer message of the same kind
+     */
+    public long getConflatedCount() {
+        return conflatedCount.get();
+    }
+
+    /**
+     * @return the mean time, in microseconds, a message waited in the buffer
+     */
+    public long getAverageWaitMicros() {
+        long dispatched = dispatchedCount.get();
+        return dispatched == 0 ? 0 : totalWaitNanos.get() / dispatched / 1000;
+    }
+
+    /**
+     * @return the mean time, in microseconds, the handler took to process a message
+     */
+    public long getAverageHandlerMicros() {
+        long dispatched = dispatchedCount.get();
+        return dispatched == 0 ? 0 : totalHandlerNanos.get() / dispatched / 1000;
+    }
+
+    /**
+     * @return the longest time, in microseconds, the handler took to process a message
+     */
+    public long getMaxHandlerMicros() {
+        return maxHandlerNanos.get() / 1000;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int capacity = 256;
+        private OverflowPolicy policy = OverflowPolicy.DROP_OLDEST;
+
+        private Builder() {}
+
+        /**
+         * @param capacity the most messages buffered for the handler
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param policy what to do with a message which arrives while the buffer is full
+         *
+         * @return this {@link Builder builder}
+         */
+        public Builder withOverflowPolicy(OverflowPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Build a dispatcher for one subscription.
+         *
+         * @param executor the {@link Executor} which runs the handler; it must not discard tasks
+         * @param receiver the {@link Receiver} which passes messages to the handler
+         *
+         * @return the {@link MessageDispatcher dispatcher}
+         *
+         * @throws CogsBuilderException if any values are invalid
+         */
+        public MessageDispatcher build(Executor executor, Receiver receiver) throws CogsBuilderException {
+            if (executor == null)
+                throw new CogsBuilderException("Executor must not be null.");
+            if (receiver == null)
+                throw new CogsBuilderException("Receiver must not be null.");
+            if (capacity < 1)
+                throw new CogsBuilderException("Capacity must be at least 1.");
+            if (policy == null)
+                throw new CogsBuilderException("Overflow policy must not be null.");
+
+            return new MessageDispatcher(this, executor, receiver);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package io.cogswell.sdk.subscription;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.koushikdutta.async.callback.CompletedCallback;
+import com.koushikdutta.async.http.AsyncHttpClient;
+import com.koushikdutta.async.http.AsyncHttpRequest;
+import com.koushikdutta.async.http.Headers;
+import com.koushikdutta.async.http.WebSocket;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.cogswell.sdk.FrameCompression;
+import io.cogswell.sdk.GambitSDKService;
+import io.cogswell.sdk.HeartbeatMonitor;
+import io.cogswell.sdk.ReconnectPolicy;
+import io.cogswell.sdk.subscription.AbstractCogsWebSocket.State;
+
+/**
+ * A push WebSocket kept connected until it is stopped: the connection behind both a
+ * dedicated {@link AbstractCogsWebSocket} and a {@link CogsSubscriptionMultiplexer}.
+ *
+ * The connection is driven by a single atomic {@link State}. Every transition is a
+ * compare-and-set, and only the caller which moves the state into {@link State#CONNECTING}
+ * opens a connection, so at most one connect is ever in flight. A connect which completes
+ * once the state has moved on closes its WebSocket straight away. A connection which drops
+ * while {@link State#OPEN} is re-established after the {@link ReconnectPolicy} delay.
+ *
+ * Each message received is handed to the subclass on the I/O thread, to be queued for its
+ * handler; {@link #deliver(CogsMessage, CogsSubscriptionHandler, CogsSubscription)} runs the handler
+ * and only then acknowledges the message. A message discarded before its handler runs is
+ * left unacknowledged, for the server to redeliver. Frames are compressed when a
+ * {@link FrameCompression} is configured and the server accepts it.
+ */
+abstract class PushConnection {
+    final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+
+    final AckAggregator acks;
+    final ReconnectPolicy reconnectPolicy;
+    final MessageDeduplicator dedup;
+    final ResumeMarkerStore resumeMarkers;
+    private final FrameCompression compression;
+
+    private volatile WebSocket webSocket;
+    private volatile HeartbeatMonitor.Heartbeat heartbeat;
+    private volatile FrameCompression.Session compressionSession;
+
+    // Orders saving a resume marker against removing it on unsubscribe.
+    private final Object markerLock = new Object();
+
+    private final Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (state.compareAndSet(State.BACKOFF, State.CONNECTING)) {
+                connect();
+            }
+        }
+    };
+
+    PushConnection() {
+        this.acks = GambitSDKService.getInstance().newAckAggregator(new AckAggregator.Sink() {
+            @Override
+            public boolean send(String frame) {
+                return PushConnection.this.send(frame);
+            }
+        });
+        this.reconnectPolicy = GambitSDKService.getInstance().newReconnectPolicy();
+        this.dedup = GambitSDKService.getInstance().newMessageDeduplicator();
+        this.resumeMarkers = GambitSDKService.getInstance().getResumeMarkerStore();
+        this.compression = GambitSDKService.getInstance().getFrameCompression();
+    }
+
+    /**
+     * @return the URI of the WebSocket route
+     */
+    protected abstract Uri getUri();
+
+    /**
+     * @return the WebSocket sub-protocol
+     */
+    protected abstract String getProtocol();
+
+    /**
+     * @return a description of the connection, for the log
+     */
+    abstract String describe();
+
+    /**
+     * Assemble the headers of a connect, including its signed payload.
+     *
+     * @return the {@link Headers headers}
+     */
+    abstract Headers buildHeaders();
+
+    /**
+     * Called on the I/O thread when a connect fails, before the reconnect is scheduled.
+     *
+     * @param error the cause of the failure
+     */
+    abstract void connectFailed(Throwable error);
+
+    /**
+     * Called on the I/O thread once a connection is open and its callbacks are installed.
+     *
+     * @param ws the open {@link WebSocket}
+     */
+    abstract void connected(WebSocket ws);
+
+    /**
+     * Called on the I/O thread with each message received.
+     *
+     * @param message the {@link CogsMessage message}
+     */
+    abstract void received(CogsMessage message);
+
+    /**
+     * @param subscription the {@link CogsSubscription subscription}
+     *
+     * @return <tt>false</tt> once the subscription is being unsubscribed
+     */
+    abstract boolean isSubscribed(CogsSubscription subscription);
+
+    /**
+     * Called when a connection closes and is not to be re-established, because the state has
+     * already moved on from {@link State#OPEN}.
+     *
+     * @param error the cause of the close, or null if it closed cleanly
+     */
+    void closed(Exception error) {
+    }
+
+    /**
+     * Called when a connect completes, or fails, after the state has moved on from
+     * {@link State#CONNECTING}.
+     */
+    void abandoned() {
+    }
+
+    /**
+     * Move from {@link State#IDLE} to {@link State#CONNECTING}, and connect.
+     */
+    void connectIfIdle() {
+        if (state.compareAndSet(State.IDLE, State.CONNECTING)) {
+            connect();
+        }
+    }
+
+    /**
+     * Flush acknowledgements, cancel any pending reconnect and close the connection. The
+     * caller moves the state first, so the close does not schedule a reconnect.
+     */
+    void disconnect() {
+        acks.flush();
+        reconnectPolicy.cancel();
+
+        WebSocket ws = webSocket;
+        webSocket = null;
+
+        if (ws != null) {
+            ws.close();
+        }
+    }
+
+    /**
+     * @return the open {@link WebSocket}, or null if there is none
+     */
+    WebSocket currentWebSocket() {
+        return webSocket;
+    }
+
+    private void connect() {
+        try {
+            Log.i("Cogs-SDK", "Connecting " + describe() + ".");
+
+            Headers headers = buildHeaders();
+
+            if (compression != null) {
+                compression.offer(headers);
+            }
+
+            AsyncHttpRequest httpRequest = new AsyncHttpRequest(getUri(), "GET", headers);
+
+            AsyncHttpClient.getDefaultInstance().websocket(httpRequest, getProtocol(), new AsyncHttpClient.WebSocketConnectCallback() {
+                @Override
+                public void onCompleted(Exception error, WebSocket ws) {
+                    if (error != null || ws == null) {
+                        if (error == null) {
+                            error = new Exception("Error on subscription WebSocket connect - could not connect.");
+                        }
+
+                        Log.e("Cogs-SDK", "Error on subscription WebSocket connect.", error);
+                        connectFailed(error);
+
+                        if (!backoff(State.CONNECTING)) {
+                            abandoned();
+                        }
+                    } else {
+                        opened(ws);
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            Log.e("Cogs-SDK", "Error connecting subscription WebSocket.", t);
+
+            if (!backoff(State.CONNECTING)) {
+                abandoned();
+            }
+        }
+    }
+
+    private void opened(final WebSocket ws) {
+        webSocket = ws;
+
+        if (!state.compareAndSet(State.CONNECTING, State.OPEN)) {
+            // Stopped while connecting.
+            if (webSocket == ws) {
+                webSocket = null;
+            }
+            ws.close();
+            abandoned();
+            return;
+        }
+
+        reconnectPolicy.connected();
+
+        final HeartbeatMonitor.Heartbeat wsHeartbeat = GambitSDKService.getInstance().watchHeartbeat(ws);
+        heartbeat = wsHeartbeat;
+
+        final FrameCompression.Session session = compression == null ? null : compression.newSession();
+        compressionSession = session;
+
+        WebSocket.StringCallback messages = new WebSocket.StringCallback() {
+            @Override
+            public void onStringAvailable(String str) {
+                CogsMessage message = CogsMessageDecoder.decode(str);
+
+                if (message != null) {
+                    received(message);
+                }
+            }
+        };
+
+        if (session != null) {
+            session.attach(ws, messages);
+        } else {
+            ws.setStringCallback(messages);
+        }
+
+        ws.setClosedCallback(new CompletedCallback() {
+            @Override
+            public void onCompleted(Exception error) {
+                if (wsHeartbeat != null) {
+                    wsHeartbeat.cancel();
+                }
+
+                if (session != null) {
+                    // Unpublish the session before ending it, so later sends go uncompressed.
+                    if (compressionSession == session) {
+                        compressionSession = null;
+                    }
+                    session.end();
+                }
+
+                if (error != null) {
+                    Log.e("Cogs-SDK", "Error caused subscription WebSocket to close.", error);
+                } else {
+                    Log.i("Cogs-SDK", "WebSocket closed without error.");
+                }
+
+                if (webSocket != ws || !backoff(State.OPEN)) {
+                    closed(error);
+                }
+            }
+        });
+
+        connected(ws);
+    }
+
+    /**
+     * Move from the given state to {@link State#BACKOFF} and schedule the next connect.
+     *
+     * @return <tt>false</tt> if the state had already moved on, typically because of a stop
+     */
+    private boolean backoff(State from) {
+        if (!state.compareAndSet(from, State.BACKOFF)) {
+            return false;
+        }
+
+        webSocket = null;
+
+        if (from == State.OPEN) {
+            // Before scheduling, so a connection which was up long enough starts over.
+            reconnectPolicy.disconnected();
+        }
+
+        reconnectPolicy.schedule(reconnect);
+        return true;
+    }
+
+    /**
+     * Deliver a message to its handler, on the dispatcher's thread. Unless the message is a
+     * duplicate, the handler runs and the message's resume marker is saved once it returns.
+     * The message is acknowledged either way, after the handler.
+     *
+     * @param message the {@link CogsMessage message}
+     * @param handler the {@link CogsSubscriptionHandler handler} of its subscription
+     * @param subscription the {@link CogsSubscription subscription} it was received for
+     */
+    void deliver(CogsMessage message, CogsSubscriptionHandler handler, CogsSubscription subscription) {
+        String messageId = message.getMessageId();
+
+        try {
+            if (dedup == null || !dedup.isDuplicate(messageId)) {
+                handler.message(message);
+
+                if (resumeMarkers != null && messageId != null) {
+                    synchronized (markerLock) {
+                        // A handler still running at unsubscribe must not restore the marker.
+                        if (isSubscribed(subscription)) {
+                            resumeMarkers.save(subscription.getKey(), messageId);
+                        }
+                    }
+                }
+            }
+        } finally {
+            // A handler which throws is not given the message again.
+            acks.ack(messageId);
+        }
+    }
+
+    /**
+     * Remove the resume marker of a subscription being unsubscribed. The caller ensures
+     * {@link #isSubscribed(CogsSubscription)} already returns <tt>false</tt>, so no message
+     * still being handled saves it again.
+     *
+     * @param subscription the {@link CogsSubscription subscription}
+     */
+    void removeMarker(CogsSubscription subscription) {
+        if (resumeMarkers != null) {
+            synchronized (markerLock) {
+                resumeMarkers.remove(subscription.getKey());
+            }
+        }
+    }
+
+    /**
+     * Send a frame on the open connection.
+     *
+     * @return <tt>false</tt> if there is no connection, or the send failed
+     */
+    boolean send(String frame) {
+        WebSocket ws = webSocket;
+        return ws != null && send(ws, frame);
+    }
+
+    /**
+     * Send a frame on a connection, compressed if the server accepts it.
+     *
+     * @return <tt>false</tt> if the send failed
+     */
+    boolean send(WebSocket ws, String frame) {
+        try {
+            FrameCompression.Session session = compressionSession;
+
+            if (session != null) {
+                session.send(ws, frame);
+            } else {
+                ws.send(frame);
+            }
+            return true;
+        } catch (Throwable error) {
+            Log.e("Cogs-SDK", "Error sending subscription frame.", error);
+            return false;
+        }
+    }
+
+    /**
+     * @return the current {@link State state} of the connection
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Supplies the acknowledgement aggregator, for its batch size and latency metrics.
+     *
+     * @return the {@link AckAggregator aggregator}
+     */
+    public AckAggregator getAckAggregator() {
+        return acks;
+    }
+
+    /**
+     * Supplies the duplicate suppression stage, for its counts.
+     *
+     * @return the {@link MessageDeduplicator deduplicator}, or null if deduplication is disabled
+     */
+    public MessageDeduplicator getMessageDeduplicator() {
+        return dedup;
+    }
+
+    /**
+     * Supplies the heartbeat of the current connection, for its round trip time.
+     *
+     * @return the {@link HeartbeatMonitor.Heartbeat heartbeat}, or null if heartbeats are disabled or there has been no connection
+     */
+    public HeartbeatMonitor.Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+}
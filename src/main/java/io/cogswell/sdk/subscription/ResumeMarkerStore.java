@@ -0,0 +1,37 @@
+package io.cogswell.sdk.subscription;
+
+/**
+ * Remembers, for each subscription, the id of the last message its handler processed.
+ *
+ * The marker is sent as last_message_id in the signed payload of each connect, so that the
+ * push route can resume after it instead of replaying what was already processed.
+ *
+ * A marker is saved once the handler has returned from a message, so messages still buffered
+ * when the connection drops or the subscription closes are delivered again on resume. Messages
+ * discarded by the {@link MessageDispatcher.OverflowPolicy overflow policy} are not: although they
+ * are left unacknowledged, the marker moves past them when a later message is processed.
+ */
+public interface ResumeMarkerStore {
+    /**
+     * @param key the {@link CogsSubscriptionKey key} of the subscription
+     *
+     * @return the id of the last message processed, or null if there is none
+     */
+    public String load(CogsSubscriptionKey key);
+
+    /**
+     * Called each time the handler returns from a message.
+     *
+     * @param key the {@link CogsSubscriptionKey key} of the subscription
+     * @param messageId the id of the message
+     */
+    public void save(CogsSubscriptionKey key, String messageId);
+
+    /**
+     * Called when the subscription is unsubscribed, so a later subscription to the same topic
+     * starts afresh. It is not called when the connection drops or the service shuts down.
+     *
+     * @param key the {@link CogsSubscriptionKey key} of the subscription
+     */
+    public void remove(CogsSubscriptionKey key);
+}